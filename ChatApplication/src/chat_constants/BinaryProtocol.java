@@ -0,0 +1,155 @@
+package chat_constants;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The binary wire protocol. A client which wants it starts the connection with a hello: the magic bytes
+ * followed by the highest version it supports, answered with the version both sides will use. From then on
+ * everything is sent as frames of a one byte opcode, a four byte big-endian payload length and the payload.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public final class BinaryProtocol {
+	/** The bytes every hello starts with. */
+	public static final byte MAGIC[] = {(byte) 0xFF, 'C', 'H'};
+	/** The number of bytes in a hello, the magic and the version. */
+	public static final int HELLO_SIZE = 4;
+	/** The highest protocol version this build supports. */
+	public static final int VERSION = 3;
+	/** The first version whose clients can be sent COMPRESSED frames. */
+	public static final int COMPRESSION_VERSION = 2;
+	/** The first version whose clients are told about older messages with OLDER frames. */
+	public static final int HISTORY_VERSION = 3;
+	/** The number of bytes before a frame's payload, the opcode and the length. */
+	public static final int HEADER_SIZE = 5;
+	/** The largest payload a server accepts from a client, and sends to one (a COMPRESSED frame's inflated frames included). */
+	public static final int MAX_PAYLOAD = 64 * 1024;
+
+	// Client to server
+	/** Asks for every message not recieved yet, the text protocol's "0". */
+	public static final byte POLL = 0x01;
+	/** Asks for new messages to be pushed as they are added. */
+	public static final byte SUBSCRIBE = 0x02;
+	/** A chat message, sent both ways. The payload is the message. */
+	public static final byte MESSAGE = 0x03;
+	/** Closes the connection. */
+	public static final byte QUIT = 0x04;
+	/** Joins a room. The payload is the room's name. */
+	public static final byte JOIN = 0x05;
+	/** Goes back to the lobby. */
+	public static final byte LEAVE = 0x06;
+	/** Asks for the list of rooms. */
+	public static final byte LIST_ROOMS = 0x07;
+	/** Asks for a page of the messages before the oldest one the client has. The payload is that message's ID. */
+	public static final byte HISTORY = 0x08;
+
+	// Server to client
+	/** Ends the reply to a request, the text protocol's null terminator line. */
+	public static final byte END = 0x10;
+	/** A line from the server for the user which is not a chat message. The payload is the text. */
+	public static final byte NOTICE = 0x11;
+	/** The client is now in another room. The payload is the room's name. */
+	public static final byte ROOM = 0x12;
+	/** The server is full and will not take the client. */
+	public static final byte FULL = 0x13;
+	/** The server has been shutdown. The payload is the text to show the user. */
+	public static final byte SHUTDOWN = 0x14;
+	/** Frames deflated together, for a large catch-up. The payload is the four byte length of the frames once 
+	 * inflated followed by the frames in zlib format. Only sent once version 2 or newer has been agreed. */
+	public static final byte COMPRESSED = 0x15;
+	/** The room has older messages than the ones about to be sent. The payload is the ID of the first one sent. 
+	 * Only sent once version 3 or newer has been agreed. */
+	public static final byte OLDER = 0x16;
+	/** Starts the reply to a HISTORY request, the page's messages follow up to an END. The payload is the ID of 
+	 * the page's first message, there are no older messages if it is 0 or the page is empty. */
+	public static final byte PAGE = 0x17;
+
+	/**
+	 * Sends a hello offering a protocol version.
+	 * @param out The stream to write to.
+	 * @param version The version to offer.
+	 * @throws IOException If the stream can not be written.
+	 */
+	public static void writeHello(OutputStream out, int version) throws IOException
+	{
+		out.write(MAGIC);
+		out.write(version);
+		out.flush();
+	}
+
+	/**
+	 * Reads the hello from the start of a connection, if there is one. A stream which does not start
+	 * with the magic is left where it was, so it can be read using the text protocol.
+	 * @param in The stream to read from, which must support mark and reset.
+	 * @return The version both sides support, or 0 if the other side is using the text protocol.
+	 * @throws IOException If the stream can not be read or the hello is invalid.
+	 */
+	public static int readHello(InputStream in) throws IOException
+	{
+		in.mark(HELLO_SIZE);
+		if(in.read() != (MAGIC[0] & 0xFF))
+		{
+			in.reset();
+			return 0;
+		}
+		for(int i = 1; i < MAGIC.length; i++)
+			if(in.read() != MAGIC[i])
+				throw new IOException("Invalid protocol hello");
+		return negotiate(in.read());
+	}
+
+	/**
+	 * Picks the version to use for a connection.
+	 * @param offered The highest version the other side supports.
+	 * @return The highest version both sides support.
+	 * @throws IOException If the other side does not support any version this build does.
+	 */
+	public static int negotiate(int offered) throws IOException
+	{
+		if(offered < 1)
+			throw new IOException("Unsupported protocol version " + offered);
+		return Math.min(offered, VERSION);
+	}
+
+	/**
+	 * Maps a line from the text protocol to the opcode of the same command. Anything which is not a
+	 * command is a chat message.
+	 * @param line The line read from the client.
+	 * @return The opcode.
+	 */
+	public static byte textOpcode(String line)
+	{
+		if(line.equals("QUIT"))
+			return QUIT;
+		else if(line.equals("0"))
+			return POLL;
+		else if(line.equals(Protocol.SUBSCRIBE))
+			return SUBSCRIBE;
+		else if(line.startsWith(Protocol.JOINROOM))
+			return JOIN;
+		else if(line.equals(Protocol.LEAVEROOM))
+			return LEAVE;
+		else if(line.equals(Protocol.LISTROOMS))
+			return LIST_ROOMS;
+		else if(line.startsWith(Protocol.HISTORY))
+			return HISTORY;
+		return MESSAGE;
+	}
+
+	/**
+	 * Gets the payload of a text protocol command, the part of the line after the command.
+	 * @param opcode The line's opcode.
+	 * @param line The line read from the client.
+	 * @return The room name for a join, the message ID for a history request, otherwise the whole line.
+	 */
+	public static String textPayload(byte opcode, String line)
+	{
+		if(opcode == JOIN)
+			return line.substring(Protocol.JOINROOM.length()).trim();
+		if(opcode == HISTORY)
+			return line.substring(Protocol.HISTORY.length()).trim();
+		return line;
+	}
+}
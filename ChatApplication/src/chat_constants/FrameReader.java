@@ -0,0 +1,155 @@
+package chat_constants;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads binary protocol frames from a blocking stream into a reusable payload buffer. Only the opcode and
+ * length are parsed, the payload is turned into a String only when the caller asks for its text.
+ * Once compression is turned on, a COMPRESSED frame is inflated and the frames inside it are returned
+ * one at a time as if they had been read from the stream.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class FrameReader {
+	private DataInputStream in;
+	private byte payload[];
+	private byte data[];
+	private int offset;
+	private int length;
+	private int maxPayload;
+	private Inflater inflater;
+	private byte inflated[];
+	private int inflatedPosition;
+	private int inflatedLength;
+
+	/**
+	 * Constructor for the frame reader.
+	 * @param in The stream to read from, positioned after the hello.
+	 * @param maxPayload The largest payload to accept.
+	 */
+	public FrameReader(InputStream in, int maxPayload)
+	{
+		this.in = new DataInputStream(in);
+		this.maxPayload = maxPayload;
+		payload = new byte[256];
+		data = payload;
+	}
+
+	/**
+	 * Turns inflating COMPRESSED frames on or off. Should only be on if the protocol version agreed supports them,
+	 * otherwise a COMPRESSED frame is returned like any other.
+	 * @param compression True to inflate COMPRESSED frames.
+	 */
+	public void setCompression(boolean compression)
+	{
+		inflater = compression ? new Inflater() : null;
+	}
+
+	/**
+	 * Reads the next frame, blocking until all of it has arrived.
+	 * @return The frame's opcode, or -1 if the stream ended.
+	 * @throws IOException If the stream can not be read or the frame is too large or corrupt.
+	 */
+	public int readFrame() throws IOException
+	{
+		if(inflatedPosition < inflatedLength)
+			return nextInflated();
+		int opcode = in.read();
+		if(opcode == -1)
+			return -1;
+		length = in.readInt();
+		if(length < 0 || length > maxPayload)
+			throw new IOException("Frame of " + length + " bytes is too large");
+		if(length > payload.length)
+			payload = new byte[Math.max(length, payload.length * 2)];
+		in.readFully(payload, 0, length);
+		data = payload;
+		offset = 0;
+		if(opcode == BinaryProtocol.COMPRESSED && inflater != null)
+		{
+			inflate();
+			return readFrame();
+		}
+		return opcode;
+	}
+
+	/**
+	 * Inflates the frames in the COMPRESSED frame just read.
+	 * @throws IOException If the frames are too large or corrupt.
+	 */
+	private void inflate() throws IOException
+	{
+		if(length < 4)
+			throw new IOException("Corrupt compressed frame");
+		int size = (payload[0] & 0xFF) << 24 | (payload[1] & 0xFF) << 16 | (payload[2] & 0xFF) << 8 | (payload[3] & 0xFF);
+		if(size < 0 || size > maxPayload - 1)
+			throw new IOException("Compressed frames of " + size + " bytes are too large");
+		// One byte spare, so a stream which inflates to more than it claims is caught
+		if(inflated == null || inflated.length < size + 1)
+			inflated = new byte[Math.max(size + 1, inflated == null ? 0 : inflated.length * 2)];
+		inflater.reset();
+		inflater.setInput(payload, 4, length - 4);
+		int n = 0;
+		try
+		{
+			while(!inflater.finished())
+			{
+				int k = inflater.inflate(inflated, n, inflated.length - n);
+				if(k == 0 && (inflater.needsInput() || inflater.needsDictionary() || n == inflated.length))
+					throw new IOException("Corrupt compressed frame");
+				n += k;
+			}
+		}
+		catch(DataFormatException e)
+		{
+			throw new IOException("Corrupt compressed frame: " + e.getMessage());
+		}
+		if(n != size)
+			throw new IOException("Corrupt compressed frame");
+		inflatedPosition = 0;
+		inflatedLength = size;
+	}
+
+	/**
+	 * Takes the next frame out of the inflated frames, without copying its payload.
+	 * @return The frame's opcode.
+	 * @throws IOException If the frame does not fit in the inflated frames.
+	 */
+	private int nextInflated() throws IOException
+	{
+		int p = inflatedPosition;
+		if(inflatedLength - p < BinaryProtocol.HEADER_SIZE)
+			throw new IOException("Corrupt compressed frame");
+		int opcode = inflated[p] & 0xFF;
+		length = (inflated[p + 1] & 0xFF) << 24 | (inflated[p + 2] & 0xFF) << 16 | (inflated[p + 3] & 0xFF) << 8 | (inflated[p + 4] & 0xFF);
+		offset = p + BinaryProtocol.HEADER_SIZE;
+		if(length < 0 || length > inflatedLength - offset)
+			throw new IOException("Corrupt compressed frame");
+		data = inflated;
+		inflatedPosition = offset + length;
+		return opcode;
+	}
+
+	/**
+	 * Gets the last frame's payload as text.
+	 * @return The decoded payload.
+	 */
+	public String getText()
+	{
+		return new String(data, offset, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gets the length of the last frame's payload.
+	 * @return The number of bytes.
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+}
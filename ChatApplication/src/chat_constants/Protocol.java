@@ -0,0 +1,26 @@
+package chat_constants;
+
+/**
+ * The commands and messages the client and server send each other. Kept apart from the GUI constants 
+ * so a server without a display never has to load AWT or Swing.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public final class Protocol {
+	public static final String SERVERFULL = "Server is Full. Please Try Again Later...";
+	public static final String SERVERSHUTDOWN = "The Server has been Shutdown by the Host.";
+	public static final String SUBSCRIBE = "SUBSCRIBE";
+	public static final String JOINROOM = "/JOIN ";
+	public static final String LEAVEROOM = "/LEAVE";
+	public static final String LISTROOMS = "/ROOMS";
+	public static final String ROOMCHANGED = "/ROOM ";
+	public static final String HISTORY = "/HISTORY ";
+	public static final String OLDERMESSAGES = "/OLDER ";
+	public static final String HISTORYPAGE = "/PAGE ";
+	public static final String MESSAGEERROR = "Could not send that message, messages can not be over 64 KB, hold line breaks or null characters, or be a server command.";
+	public static final String ROOMERROR = "Could not join that room, room names are 1 to 32 letters, digits, '-' or '_'.";
+	public static final String HISTORYTRUNCATED = "[History truncated, older messages are no longer available]";
+	public static final String MESSAGESDROPPED = "[Too far behind, older messages skipped: ";
+	public static final String WAITINGROOM = "The Server is Full. Your place in the waiting room: ";
+}
@@ -0,0 +1,157 @@
+package client;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * A list model for the virtualized chat log, holding one row per line of chat. The rows are kept in a ring
+ * which grows up to the model's capacity and then overwrites the oldest rows, so adding a line costs the same
+ * however long the log is, and a JList with fixed cell sizes only ever lays out and paints the rows on screen.
+ * Like any Swing model it must only be used on the Event Dispatch Thread.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class ChatLogModel extends AbstractListModel<String> {
+	private static final long serialVersionUID = 1L;
+	private static final int INITIAL_ROWS = 1024;
+
+	private final int capacity;
+	private String rows[];
+	private int head;
+	private int size;
+
+	/**
+	 * Constructor for the chat log model.
+	 * @param capacity The most rows the model keeps, older ones are removed as new ones are added.
+	 */
+	public ChatLogModel(int capacity)
+	{
+		this.capacity = capacity;
+		rows = new String[Math.min(capacity, INITIAL_ROWS)];
+	}
+
+	@Override
+	public int getSize()
+	{
+		return size;
+	}
+
+	@Override
+	public String getElementAt(int index)
+	{
+		return rows[(head + index) % rows.length];
+	}
+
+	/**
+	 * Adds chat text to the end of the log, one row per line, then tells the list which rows were removed and added.
+	 * @param texts The text to add, in order. Each one may hold several lines, and a trailing newline is ignored.
+	 */
+	public void addAll(Collection<String> texts)
+	{
+		int oldSize = size;
+		int dropped = 0;
+		for(String text : texts)
+			for(String row : split(text))
+				if(add(row))
+					dropped++;
+		// Rows which were added and overwritten in the same batch never reach the list
+		int removed = Math.min(dropped, oldSize);
+		if(removed > 0)
+			fireIntervalRemoved(this, 0, removed - 1);
+		if(size > oldSize - removed)
+			fireIntervalAdded(this, oldSize - removed, size - 1);
+	}
+	
+	/**
+	 * Adds older chat text to the start of the log, one row per line. Only as many rows as the log has room 
+	 * for are added, the newest ones, since the log never removes newer rows to make room for older ones.
+	 * @param texts The text to add, oldest first. Each one may hold several lines, and a trailing newline is ignored.
+	 */
+	public void addAllFirst(Collection<String> texts)
+	{
+		ArrayList<String> older = new ArrayList<String>();
+		for(String text : texts)
+			older.addAll(split(text));
+		int count = Math.min(capacity - size, older.size());
+		if(count <= 0)
+			return;
+		if(size + count > rows.length)
+			grow(size + count);
+		for(int i = older.size() - 1; i >= older.size() - count; i--)
+		{
+			head = (head - 1 + rows.length) % rows.length;
+			rows[head] = older.get(i);
+			size++;
+		}
+		fireIntervalAdded(this, 0, count - 1);
+	}
+	
+	/**
+	 * Splits chat text into rows.
+	 * @param text The text, which may hold several lines and end with a newline.
+	 * @return The rows, one per line.
+	 */
+	private static List<String> split(String text)
+	{
+		ArrayList<String> lines = new ArrayList<String>(1);
+		int start = 0;
+		int length = text.endsWith("\n") ? text.length() - 1 : text.length();
+		while(start <= length)
+		{
+			int end = text.indexOf('\n', start);
+			if(end == -1 || end > length)
+				end = length;
+			lines.add(text.substring(start, end));
+			start = end + 1;
+		}
+		return lines;
+	}
+	
+	/**
+	 * Adds one row to the end of the ring, growing it or overwriting the oldest row.
+	 * @param row The row to add.
+	 * @return True if the oldest row was overwritten.
+	 */
+	private boolean add(String row)
+	{
+		if(size == rows.length && size < capacity)
+			grow(size + 1);
+		if(size < rows.length)
+		{
+			rows[(head + size++) % rows.length] = row;
+			return false;
+		}
+		rows[head] = row;
+		head = (head + 1) % rows.length;
+		return true;
+	}
+	
+	/**
+	 * Replaces the ring with a bigger one, at least doubling it up to the model's capacity, with the oldest row first.
+	 * @param needed The number of rows the ring has to hold.
+	 */
+	private void grow(int needed)
+	{
+		String grown[] = new String[(int) Math.min(capacity, Math.max(needed, rows.length * 2L))];
+		for(int i = 0; i < size; i++)
+			grown[i] = getElementAt(i);
+		rows = grown;
+		head = 0;
+	}
+	
+	/**
+	 * Removes every row from the log.
+	 */
+	public void clear()
+	{
+		int oldSize = size;
+		rows = new String[Math.min(capacity, INITIAL_ROWS)];
+		head = 0;
+		size = 0;
+		if(oldSize > 0)
+			fireIntervalRemoved(this, 0, oldSize - 1);
+	}
+}
@@ -1,161 +1,340 @@
-package client;
-import java.io.*;
-import java.net.*;
-
-import chat_constants.Constants;
-
-/**
- * Connects and communicates to a server using sockets. It can connect to localhosted servers
- * or if the servers IP address or machine name are known, by LAN. It sends String messages back 
- * and forth between the server and the client GUI.
- * @author Bailey Duncan
- * @since May 18, 2017
- * @version 1.0
- */
-public class Client implements Runnable{
-
-	Socket sock;
-	BufferedReader in;
-	PrintWriter out;
-	String read, handle;
-	int lineNumber;
-	ClientGUI chatClient;
-	
-	/**
-	 * Contructor for the Client class, which connects the socket and opens its I/O streams.
-	 * @param port The port the socket will connect to.
-	 * @param address The IP address or host machine name that the server is run on (or "localhost").
-	 * @param handle The user's username in the chat.
-	 */
-	public Client(int port, String address, String handle)
-	{
-		try{
-			chatClient = new ClientGUI(this);
-			sock = new Socket(address, port);
-			this.handle = handle;
-			in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-			out = new PrintWriter(sock.getOutputStream(), true);
-			lineNumber = 0;
-		}
-		catch(IOException e)
-		{
-			Constants.errorPopup("No Chatroom Found!");
-			chatClient.close();
-		}
-	}
-	
-	/**
-	 * Checks if the socket is closed.
-	 * @return True if socket is open, false if closed.
-	 */
-	public boolean isConnected()
-	{
-		if(sock.isClosed())
-			return false;
-		return true;
-	}
-	
-	/**
-	 * Closes the socket (and implicitly its I/O streams) and the chat client GUI.
-	 * @throws IOException Let the method calling this handle the exception.
-	 */
-	public void close() throws IOException
-	{
-			sock.close();
-			chatClient.close();
-	}
-	
-	/**
-	 * Checks if the read message is a server shutdown message. If so, then kick the client
-	 * and close the socket connection.
-	 * @param read The read message from the server.
-	 * @return True if the server has been shutdown, false otherwise.
-	 * @throws IOException Let the method calling this handle the exception appropriately.
-	 */
-	public boolean checkShutdown(String read) throws IOException
-	{
-		if(read.equals(Constants.SERVERSHUTDOWN))
-		{
-			Constants.errorPopup(read);
-			out.println(handle + " has been kicked");
-			out.println("QUIT");
-			close();
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Checks if the read message is a server is full message. If so, then send an acknowledge message
-	 * and close the socket connection.
-	 * @param read The read message from the server.
-	 * @return True if the server is full, false otherwise.
-	 * @throws IOException Let the method calling this handle the exception appropriately.
-	 */
-	public boolean checkFull(String read) throws IOException
-	{
-		if(read.equals(Constants.SERVERFULL))
-		{
-			Constants.errorPopup(read);
-			out.println("Acknowledge");
-			close();
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Communicates between the server and client. If a "Server is full", or a "Server is shutdown"
-	 * message is recieved, the client will tell the user and close. If the user send the message 
-	 * "QUIT" or "quit" exactly then the client will inform the server they are leaving and close the client.
-	 */
-	public void run()
-	{
-		try{
-			out.println(handle + " joined the chat");
-			read = in.readLine();
-			if(checkFull(read) || checkShutdown(read))
-				return;
-			chatClient.clearLog();
-			chatClient.updateChat(read + "\n");
-			while(true)
-			{
-				if(chatClient.sending)
-				{
-					read = handle + ": " + chatClient.getMsg();
-					chatClient.sending = false;
-					chatClient.clear();
-				}
-				else
-					read = "0";
-				
-				if(read.equals(handle + ": " + "QUIT") || read.equals(handle + ": " + "quit"))
-				{
-					out.println(handle + " has left");
-					chatClient.updateChat(in.readLine());
-					out.println("QUIT");
-					close();
-					break;
-				}
-				
-				out.println(read);
-				read = in.readLine();
-				while(!read.matches("\0"))
-				{
-					if(checkShutdown(read))
-						return;
-					chatClient.updateChat(read + "\n");
-					read = in.readLine();
-				}
-			}
-		}
-		catch(IOException e)
-		{
-			Constants.errorPopup("IO Exception Occurred." + e.getMessage());
-		}
-		catch(Exception e)
-		{
-			Constants.errorPopup("Exception Occurred: " + e.getMessage());
-		}	
-	}
-}
+package client;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import chat_constants.BinaryProtocol;
+import chat_constants.Constants;
+import chat_constants.FrameReader;
+
+/**
+ * Connects and communicates to a server using sockets. It can connect to localhosted servers
+ * or if the servers IP address or machine name are known, by LAN. It sends String messages back 
+ * and forth between the server and the client GUI, using the binary protocol, on a sender thread so the GUI never blocks.
+ * @author Bailey Duncan
+ * @since May 18, 2017
+ * @version 1.0
+ */
+public class Client implements Runnable{
+
+	Socket sock;
+	BufferedInputStream in;
+	FrameReader frames;
+	DataOutputStream out;
+	String handle;
+	ClientGUI chatClient;
+	ExecutorService sender;
+	// The ID of the oldest message in the log while the server has older ones, otherwise -1
+	volatile int oldest = -1;
+	volatile boolean loadingOlder;
+	
+	/**
+	 * Contructor for the Client class, which connects the socket and opens its I/O streams.
+	 * @param port The port the socket will connect to.
+	 * @param address The IP address or host machine name that the server is run on (or "localhost").
+	 * @param handle The user's username in the chat.
+	 */
+	public Client(int port, String address, String handle)
+	{
+		try{
+			chatClient = new ClientGUI(this);
+			sock = new Socket(address, port);
+			// Every request is flushed as soon as it is complete, so there is nothing for Nagle's algorithm to combine
+			sock.setTcpNoDelay(true);
+			this.handle = handle;
+			in = new BufferedInputStream(sock.getInputStream());
+			frames = new FrameReader(in, BinaryProtocol.MAX_PAYLOAD);
+			out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream()));
+			sender = Executors.newSingleThreadExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Client Sender");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			// Queued before the GUI can ask for anything to be sent, so the server always gets the hello first
+			execute(new Runnable()
+			{
+				@Override
+				public void run() {
+					try
+					{
+						BinaryProtocol.writeHello(out, BinaryProtocol.VERSION);
+						send(BinaryProtocol.SUBSCRIBE, null);
+						send(BinaryProtocol.MESSAGE, handle + " joined the chat");
+					}
+					catch(IOException e)
+					{
+						// The connection failed, which the client's thread finds out when it reads the hello
+					}
+				}
+			});
+		}
+		catch(IOException e)
+		{
+			Constants.errorPopup("No Chatroom Found!");
+			chatClient.close();
+		}
+	}
+	
+	/**
+	 * Checks if the socket is closed.
+	 * @return True if socket is open, false if closed.
+	 */
+	public boolean isConnected()
+	{
+		if(sock.isClosed())
+			return false;
+		return true;
+	}
+	
+	/**
+	 * Closes the socket (and implicitly its I/O streams) and the chat client GUI.
+	 * @throws IOException Let the method calling this handle the exception.
+	 */
+	public void close() throws IOException
+	{
+			sock.close();
+			if(sender != null)
+				sender.shutdown();
+			chatClient.close();
+	}
+	
+	/**
+	 * Runs a task on the sender thread, after everything asked for before it. Does nothing once the client is closed.
+	 * @param task The task, which writes to the server.
+	 */
+	private void execute(Runnable task)
+	{
+		try
+		{
+			sender.execute(task);
+		}
+		catch(RejectedExecutionException e)
+		{
+			// The connection has been closed, there is nobody left to send to
+		}
+	}
+	
+	/**
+	 * Sends a frame to the server. Only called on the sender thread, and synchronized so a frame is always 
+	 * written whole whichever thread writes the next one.
+	 * @param opcode The frame's opcode.
+	 * @param text The frame's payload, or null if it has none.
+	 * @throws IOException If the server can not be written to.
+	 */
+	private synchronized void send(byte opcode, String text) throws IOException
+	{
+		byte payload[] = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+		out.writeByte(opcode);
+		out.writeInt(payload.length);
+		out.write(payload);
+		out.flush();
+	}
+	
+	/**
+	 * Tells the user the server has been shutdown and closes the socket connection. The server closes 
+	 * its end as soon as it has sent the notice, so nothing more is sent to it.
+	 * @param read The shutdown message from the server.
+	 * @throws IOException Let the method calling this handle the exception appropriately.
+	 */
+	private void shutdown(String read) throws IOException
+	{
+		Constants.errorPopup(read);
+		close();
+	}
+	
+	/**
+	 * Sends a message typed by the user to the server. If the user sends the message 
+	 * "QUIT" or "quit" exactly then the client will inform the server they are leaving and close the client. 
+	 * "/join name" moves the user to another room (creating it if needed), "/leave" moves them back to 
+	 * the lobby and "/rooms" lists the rooms on the server. The message is sent on the sender thread.
+	 * @param msg The user-typed message.
+	 */
+	public void sendMsg(final String msg)
+	{
+		if(msg.equals("QUIT") || msg.equals("quit"))
+		{
+			quit();
+			return;
+		}
+		execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				try
+				{
+					if(msg.toLowerCase().startsWith("/join "))
+						changeRoom(BinaryProtocol.JOIN, msg.substring(6).trim());
+					else if(msg.equalsIgnoreCase("/leave"))
+						changeRoom(BinaryProtocol.LEAVE, null);
+					else if(msg.equalsIgnoreCase("/rooms"))
+						send(BinaryProtocol.LIST_ROOMS, null);
+					else
+						send(BinaryProtocol.MESSAGE, handle + ": " + msg);
+				}
+				catch(IOException e)
+				{
+					if(isConnected())
+						Constants.errorPopup("IO Exception Occurred." + e.getMessage());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Leaves the current room and joins another, announcing it in both.
+	 * @param opcode The join or leave opcode.
+	 * @param room The name of the room to join, or null to leave.
+	 * @throws IOException If the server can not be written to.
+	 */
+	private void changeRoom(byte opcode, String room) throws IOException
+	{
+		send(BinaryProtocol.MESSAGE, handle + " has left");
+		send(opcode, room);
+		send(BinaryProtocol.MESSAGE, handle + " joined the chat");
+	}
+	
+	/**
+	 * Asks the server for a page of the messages before the oldest one in the chat log, unless it has none 
+	 * or a page is already on its way. Called when the user scrolls to the top of the log.
+	 */
+	public void loadOlder()
+	{
+		final int before = oldest;
+		if(before <= 0 || loadingOlder || !isConnected())
+			return;
+		loadingOlder = true;
+		execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				try
+				{
+					send(BinaryProtocol.HISTORY, Integer.toString(before));
+				}
+				catch(IOException e)
+				{
+					if(isConnected())
+						Constants.errorPopup("IO Exception Occurred." + e.getMessage());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Tells the server the user is leaving and closes the client, once everything asked for before has been sent. 
+	 * Does nothing if the connection has already been closed.
+	 */
+	public void quit()
+	{
+		if(sock == null || !isConnected())
+			return;
+		execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				try
+				{
+					send(BinaryProtocol.MESSAGE, handle + " has left");
+					send(BinaryProtocol.QUIT, null);
+				}
+				catch(IOException e)
+				{
+					// Closing anyway, the server notices the connection has gone
+				}
+				try
+				{
+					close();
+				}
+				catch(IOException e)
+				{
+					Constants.errorPopup("IO Exception Occurred." + e.getMessage());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Communicates between the server and client. The sender thread has already offered the binary protocol and subscribed to 
+	 * the chat so the server pushes new messages as they are sent, and this thread blocks reading them. 
+	 * If the server is full or has been shutdown, the client will tell the user and close. A page of older messages 
+	 * is collected until its end and then put at the top of the chat log in one go.
+	 */
+	public void run()
+	{
+		try{
+			int version = BinaryProtocol.readHello(in);
+			if(version == 0)
+			{
+				Constants.errorPopup("The server does not support this version of the client.");
+				close();
+				return;
+			}
+			frames.setCompression(version >= BinaryProtocol.COMPRESSION_VERSION);
+			chatClient.clearLog();
+			ArrayList<String> page = null;
+			int pageStart = -1;
+			int opcode;
+			while((opcode = frames.readFrame()) != -1)
+			{
+				switch(opcode)
+				{
+				case BinaryProtocol.MESSAGE:
+				case BinaryProtocol.NOTICE:
+					if(page != null)
+						page.add(frames.getText() + "\n");
+					else
+						chatClient.updateChat(frames.getText() + "\n");
+					break;
+				case BinaryProtocol.OLDER:
+					oldest = Integer.parseInt(frames.getText());
+					break;
+				case BinaryProtocol.PAGE:
+					page = new ArrayList<String>();
+					pageStart = Integer.parseInt(frames.getText());
+					break;
+				case BinaryProtocol.END:
+					if(page != null)
+					{
+						chatClient.prependChat(page);
+						oldest = page.isEmpty() ? -1 : pageStart;
+						loadingOlder = false;
+						page = null;
+					}
+					break;
+				case BinaryProtocol.ROOM:
+					oldest = -1;
+					loadingOlder = false;
+					chatClient.clearLog();
+					chatClient.setRoom(frames.getText());
+					break;
+				case BinaryProtocol.FULL:
+					Constants.errorPopup(frames.getText());
+					close();
+					return;
+				case BinaryProtocol.SHUTDOWN:
+					shutdown(frames.getText());
+					return;
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			// Closing the socket from the GUI unblocks the read, which is not an error
+			if(isConnected())
+				Constants.errorPopup("IO Exception Occurred." + e.getMessage());
+		}
+		catch(Exception e)
+		{
+			Constants.errorPopup("Exception Occurred: " + e.getMessage());
+		}	
+	}
+}
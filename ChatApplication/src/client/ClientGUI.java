@@ -1,241 +1,541 @@
-package client;
-import java.awt.Dimension;
-import java.awt.event.KeyEvent;
-import java.awt.event.KeyListener;
-import java.awt.event.WindowEvent;
-import java.awt.event.WindowListener;
-
-import javax.swing.Box;
-import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
-import javax.swing.ScrollPaneConstants;
-
-import chat_constants.Constants;
-
-/**
- * The GUI for the (chat) client, which has a chat console and a log of chat messages.
- * @author Bailey Duncan
- * @since May 18, 2017
- * @version 1.0
- */
-public class ClientGUI {
-	
-	// Components
-	private JFrame f;
-	private Box box;
-	private JTextArea chatConsole, chatLog;
-	private JScrollPane jsp;
-	private JLabel header;
-	public boolean sending;
-	
-	/**
-	 * The constructor for the client GUI.
-	 * @param c The back-end client class which handles communication to the server.
-	 */
-	public ClientGUI(Client c)
-	{	
-		initConsole();
-		initLog();
-		initHeader();
-		initBox();
-		initFrame();		
-		addListeners();
-	}
-	
-	/**
-	 * Initializes the chat console which users type messages into.
-	 */
-	public void initConsole()
-	{
-		chatConsole = new JTextArea ();
-		chatConsole.setBackground(Constants.BLACK);
-		chatConsole.setForeground(Constants.GREEN);
-		chatConsole.setFont(Constants.CHATFONT);
-		chatConsole.setPreferredSize(new Dimension(450, 150));
-		chatConsole.setLineWrap(true);
-		chatConsole.setWrapStyleWord(true);
-		chatConsole.setBorder(Constants.GREENBORDER);
-	}
-	
-	/**
-	 * Initializes the chat log which displays all the messages in the chat.
-	 */
-	public void initLog()
-	{
-		chatLog = new JTextArea("No Server Response.");
-		chatLog.setEditable(false);
-		chatLog.setBackground(Constants.BLACK);
-		chatLog.setForeground(Constants.GREEN);
-		chatLog.setFont(Constants.CHATFONT);
-		chatLog.setLineWrap(true);
-		chatLog.setWrapStyleWord(true);
-		
-		jsp = new JScrollPane(chatLog, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED , ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
-		jsp.setAutoscrolls(true);
-		jsp.setPreferredSize(new Dimension(450, 400));
-	}
-	
-	/**
-	 * Initializes the title header for the chat GUI.
-	 */
-	public void initHeader()
-	{
-		header = new JLabel("CHAT");
-		header.setFont(Constants.TITLEFONT);
-		header.setBackground(Constants.BLACK);
-		header.setForeground(Constants.GREEN);
-	}
-	
-	/**
-	 * Initializes a vertical box to hold all the chat GUI components.
-	 */
-	public void initBox()
-	{
-		box = Box.createVerticalBox();
-		box.setBorder(Constants.EMPTYBORDER);
-		box.add(header);
-		box.add(Box.createVerticalStrut(25));
-		box.add(jsp);
-		box.add(Box.createVerticalStrut(25));
-		box.add(chatConsole);
-		box.add(Box.createVerticalStrut(25));
-		
-	}
-	
-	/**
-	 * Initializes the JFrame for the GUI.
-	 */
-	public void initFrame()
-	{
-		f = new JFrame("Chatroom");
-		f.setSize(500, 700);
-		f.add(box);
-		f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-		f.getContentPane().setBackground(Constants.BLACK);
-		f.setVisible(true);
-	}
-	
-	/**
-	 * Clears all text from the chat console.
-	 */
-	public void clear()
-	{
-		chatConsole.setText("");
-	}
-	
-	/**
-	 * Clears all text from the chat log.
-	 */
-	public void clearLog()
-	{
-		chatLog.setText("");
-	}
-	
-	/**
-	 * Adds a message (String) to the chat log.
-	 * @param s The string to append to the chat log.
-	 */
-	public void updateChat(String s)
-	{
-		chatLog.append(s);
-	}
-	
-	/**
-	 * Gets the user-typed text from the chat console.
-	 * @return A String.
-	 */
-	public String getMsg()
-	{
-		String message = chatConsole.getText().replaceAll("\n", "");
-		return message;
-	}
-	
-	/**
-	 * Generates a Window Closing event.
-	 */
-	public void close()
-	{
-		f.dispatchEvent(new WindowEvent(f, WindowEvent.WINDOW_CLOSING));
-	}
-	
-	/**
-	 * Adds listeners for the ENTER key and window closing events. On window closing event, the
-	 * program sends a quit message to the server. On an ENTER key event, the program sends the text
-	 * in the chat console to the server.
-	 */
-	public void addListeners()
-	{
-		f.addWindowListener(new WindowListener()
-				{
-
-					@Override
-					public void windowActivated(WindowEvent arg0) {
-						// TODO Auto-generated method stub
-						
-					}
-
-					@Override
-					public void windowClosed(WindowEvent arg0) {
-						// TODO Auto-generated method stub
-						
-					}
-
-					@Override
-					public void windowClosing(WindowEvent w) {
-						// TODO Auto-generated method stub
-						chatConsole.setText("QUIT");
-						sending = true;
-					}
-
-					@Override
-					public void windowDeactivated(WindowEvent arg0) {
-						// TODO Auto-generated method stub
-						
-					}
-
-					@Override
-					public void windowDeiconified(WindowEvent arg0) {
-						// TODO Auto-generated method stub
-						
-					}
-
-					@Override
-					public void windowIconified(WindowEvent arg0) {
-						// TODO Auto-generated method stub
-						
-					}
-
-					@Override
-					public void windowOpened(WindowEvent arg0) {
-						// TODO Auto-generated method stub
-						
-					}
-					
-				});
-		
-		chatConsole.addKeyListener(new KeyListener()
-		{
-			@Override
-			public void keyPressed(KeyEvent e)
-			{
-				if(e.getKeyCode() == KeyEvent.VK_ENTER && sending == false)
-				{
-					if(!getMsg().matches(""))
-					{
-						sending = true;
-					}
-				}
-			}
-			
-			@Override
-			public void keyTyped(KeyEvent e)
-			{}
-			
-			@Override
-			public void keyReleased(KeyEvent e)
-			{}
-		});
-	}
-}
+package client;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowEvent;
+import java.awt.event.WindowListener;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.swing.Box;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+
+import chat_constants.Constants;
+
+/**
+ * The GUI for the (chat) client, which has a chat console and a log of chat messages. 
+ * The log keeps the most recent lines, and scrolling to its top loads a page of older messages.
+ * @author Bailey Duncan
+ * @since May 18, 2017
+ * @version 1.0
+ */
+public class ClientGUI {
+	/** The number of recent lines the chat log keeps, unless the chat.logLines system property says otherwise. */
+	public static final int DEFAULT_LOG_LINES = 5000;
+	/** The number of recent lines the virtualized chat log keeps, unless the chat.logLines system property says otherwise. */
+	public static final int DEFAULT_LIST_LINES = 200000;
+	/** How long queued lines wait to be added to the chat log, in milliseconds, about one frame. */
+	private static final int FRAME_TIME = 16;
+	
+	// Components
+	private JFrame f;
+	private Box box;
+	private JTextArea chatConsole, chatLog;
+	private JList<String> chatList;
+	private ChatLogModel logModel;
+	private JScrollPane jsp;
+	private JLabel header;
+	private Client client;
+	private Timer render;
+	private int maxLines;
+	
+	// Lines waiting for the Event Dispatch Thread, guarded by pendingLock
+	private final ReentrantLock pendingLock = new ReentrantLock();
+	private ArrayDeque<String> pending = new ArrayDeque<String>();
+	private ArrayDeque<String> pendingOlder = new ArrayDeque<String>();
+	private boolean clearPending, renderScheduled;
+	// True while the log is being changed, so the changes do not look like the user scrolling
+	private boolean rendering;
+	
+	/**
+	 * The constructor for the client GUI.
+	 * @param c The back-end client class which handles communication to the server.
+	 */
+	public ClientGUI(Client c)
+	{	
+		client = c;
+		boolean listView = "list".equalsIgnoreCase(System.getProperty("chat.logView"));
+		maxLines = Math.max(1, Integer.getInteger("chat.logLines", listView ? DEFAULT_LIST_LINES : DEFAULT_LOG_LINES));
+		initRender();
+		initConsole();
+		if(listView)
+			initListLog();
+		else
+			initLog();
+		initHeader();
+		initBox();
+		initFrame();		
+		addListeners();
+	}
+	
+	/**
+	 * Initializes the chat console which users type messages into.
+	 */
+	public void initConsole()
+	{
+		chatConsole = new JTextArea ();
+		chatConsole.setBackground(Constants.BLACK);
+		chatConsole.setForeground(Constants.GREEN);
+		chatConsole.setFont(Constants.CHATFONT);
+		chatConsole.setPreferredSize(new Dimension(450, 150));
+		chatConsole.setLineWrap(true);
+		chatConsole.setWrapStyleWord(true);
+		chatConsole.setBorder(Constants.GREENBORDER);
+	}
+	
+	/**
+	 * Initializes the chat log which displays all the messages in the chat.
+	 */
+	public void initLog()
+	{
+		chatLog = new JTextArea("No Server Response.");
+		chatLog.setEditable(false);
+		chatLog.setBackground(Constants.BLACK);
+		chatLog.setForeground(Constants.GREEN);
+		chatLog.setFont(Constants.CHATFONT);
+		chatLog.setLineWrap(true);
+		chatLog.setWrapStyleWord(true);
+		// The log is scrolled by renderPending(), not by the caret following the text
+		((DefaultCaret) chatLog.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+		
+		jsp = new JScrollPane(chatLog, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED , ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+		jsp.setAutoscrolls(true);
+		jsp.setPreferredSize(new Dimension(450, 400));
+	}
+	
+	/**
+	 * Initializes the virtualized chat log, a list with one fixed size row per line of chat, so it only lays out 
+	 * and paints the rows on screen however long the history is. Lines too long for the log are cut short, and 
+	 * shown in full as a tooltip.
+	 */
+	public void initListLog()
+	{
+		logModel = new ChatLogModel(maxLines);
+		logModel.addAll(Collections.singletonList("No Server Response."));
+		chatList = new JList<String>(logModel)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public String getToolTipText(MouseEvent e)
+			{
+				int index = locationToIndex(e.getPoint());
+				if(index == -1)
+					return null;
+				String row = getModel().getElementAt(index);
+				return getFontMetrics(getFont()).stringWidth(row) > getVisibleRect().width ? row : null;
+			}
+		};
+		chatList.setBackground(Constants.BLACK);
+		chatList.setForeground(Constants.GREEN);
+		chatList.setSelectionBackground(Constants.GREEN);
+		chatList.setSelectionForeground(Constants.BLACK);
+		chatList.setFont(Constants.CHATFONT);
+		// A prototype fixes every row's size, so the list never measures its rows, and being narrower than
+		// the view keeps the list as wide as the view
+		chatList.setPrototypeCellValue(" ");
+		
+		jsp = new JScrollPane(chatList, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED , ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+		jsp.setPreferredSize(new Dimension(450, 400));
+	}
+	
+	/**
+	 * Initializes the timer which adds queued lines to the chat log. It only runs when there is something to add.
+	 */
+	public void initRender()
+	{
+		render = new Timer(FRAME_TIME, new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				renderPending();
+			}
+		});
+		render.setRepeats(false);
+	}
+	
+	/**
+	 * Initializes the title header for the chat GUI.
+	 */
+	public void initHeader()
+	{
+		header = new JLabel("CHAT");
+		header.setFont(Constants.TITLEFONT);
+		header.setBackground(Constants.BLACK);
+		header.setForeground(Constants.GREEN);
+	}
+	
+	/**
+	 * Initializes a vertical box to hold all the chat GUI components.
+	 */
+	public void initBox()
+	{
+		box = Box.createVerticalBox();
+		box.setBorder(Constants.EMPTYBORDER);
+		box.add(header);
+		box.add(Box.createVerticalStrut(25));
+		box.add(jsp);
+		box.add(Box.createVerticalStrut(25));
+		box.add(chatConsole);
+		box.add(Box.createVerticalStrut(25));
+		
+	}
+	
+	/**
+	 * Initializes the JFrame for the GUI.
+	 */
+	public void initFrame()
+	{
+		f = new JFrame("Chatroom");
+		f.setSize(500, 700);
+		f.add(box);
+		f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		f.getContentPane().setBackground(Constants.BLACK);
+		f.setVisible(true);
+	}
+	
+	/**
+	 * Clears all text from the chat console.
+	 */
+	public void clear()
+	{
+		chatConsole.setText("");
+	}
+	
+	/**
+	 * Clears all text from the chat log, along with any lines still waiting to be added to it. 
+	 * May be called from any thread.
+	 */
+	public void clearLog()
+	{
+		pendingLock.lock();
+		try
+		{
+			pending.clear();
+			pendingOlder.clear();
+			clearPending = true;
+			scheduleRender();
+		}
+		finally
+		{
+			pendingLock.unlock();
+		}
+	}
+	
+	/**
+	 * Shows which room the user is in, in the title header. May be called from any thread.
+	 * @param room The room's name.
+	 */
+	public void setRoom(final String room)
+	{
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			@Override
+			public void run() {
+				header.setText(room.isEmpty() ? "CHAT" : "CHAT - " + room);
+			}
+		});
+	}
+	
+	/**
+	 * Queues a message (String) to be added to the chat log in the next frame. May be called from any thread. 
+	 * Only the most recent lines are queued, older ones would be trimmed straight away anyway.
+	 * @param s The string to append to the chat log.
+	 */
+	public void updateChat(String s)
+	{
+		pendingLock.lock();
+		try
+		{
+			pending.add(s);
+			if(pending.size() > maxLines)
+				pending.poll();
+			scheduleRender();
+		}
+		finally
+		{
+			pendingLock.unlock();
+		}
+	}
+	
+	/**
+	 * Starts the render timer, unless it is already going to run. Must be called holding the pending lock.
+	 */
+	private void scheduleRender()
+	{
+		if(renderScheduled)
+			return;
+		renderScheduled = true;
+		render.start();
+	}
+	
+	/**
+	 * Queues a page of older messages to be put at the top of the chat log in the next frame. May be called from any thread.
+	 * @param lines The messages, oldest first.
+	 */
+	public void prependChat(List<String> lines)
+	{
+		pendingLock.lock();
+		try
+		{
+			// Pages arrive newest first, so each one goes in front of any still waiting
+			for(int i = lines.size() - 1; i >= 0; i--)
+				pendingOlder.addFirst(lines.get(i));
+			while(pendingOlder.size() > maxLines)
+				pendingOlder.pollFirst();
+			scheduleRender();
+		}
+		finally
+		{
+			pendingLock.unlock();
+		}
+	}
+	
+	/**
+	 * Adds every queued line to the chat log as one edit, along with any older messages at the top, then 
+	 * trims the log to its most recent lines. Keeps the newest line in view if the user had not scrolled up, 
+	 * and otherwise keeps the lines the user was looking at in place. Runs on the Event Dispatch Thread.
+	 */
+	private void renderPending()
+	{
+		ArrayDeque<String> lines, older;
+		boolean clear;
+		pendingLock.lock();
+		try
+		{
+			lines = pending;
+			older = pendingOlder;
+			clear = clearPending;
+			pending = new ArrayDeque<String>();
+			pendingOlder = new ArrayDeque<String>();
+			clearPending = false;
+			renderScheduled = false;
+		}
+		finally
+		{
+			pendingLock.unlock();
+		}
+		rendering = true;
+		try
+		{
+			JScrollBar bar = jsp.getVerticalScrollBar();
+			boolean atBottom = clear || bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum();
+			if(clear)
+			{
+				if(logModel != null)
+					logModel.clear();
+				else
+					chatLog.setText("");
+			}
+			if(!older.isEmpty())
+			{
+				int value = bar.getValue();
+				int max = bar.getMaximum();
+				prependLog(older);
+				jsp.validate();
+				bar.setValue(value + bar.getMaximum() - max);
+			}
+			if(!lines.isEmpty())
+				appendLog(lines);
+			if(atBottom)
+			{
+				jsp.validate();
+				bar.setValue(bar.getMaximum());
+			}
+		}
+		finally
+		{
+			rendering = false;
+		}
+	}
+	
+	/**
+	 * Adds lines to the end of the chat log, then trims it to its most recent lines.
+	 * @param lines The lines to add.
+	 */
+	private void appendLog(ArrayDeque<String> lines)
+	{
+		if(logModel != null)
+		{
+			logModel.addAll(lines);
+			return;
+		}
+		StringBuilder text = new StringBuilder();
+		for(String line : lines)
+			text.append(line);
+		chatLog.append(text.toString());
+		trimLog();
+	}
+	
+	/**
+	 * Adds older lines to the start of the chat log, as many as it has room for.
+	 * @param lines The lines to add, oldest first.
+	 */
+	private void prependLog(ArrayDeque<String> lines)
+	{
+		if(logModel != null)
+		{
+			logModel.addAllFirst(lines);
+			return;
+		}
+		int room = maxLines - getLogSize();
+		while(lines.size() > room && !lines.isEmpty())
+			lines.poll();
+		StringBuilder text = new StringBuilder();
+		for(String line : lines)
+			text.append(line);
+		chatLog.insert(text.toString(), 0);
+	}
+	
+	/**
+	 * Gets the number of lines in the chat log.
+	 * @return The number of lines.
+	 */
+	private int getLogSize()
+	{
+		// The text always ends with a newline, so the last line is empty
+		return logModel != null ? logModel.getSize() : chatLog.getLineCount() - 1;
+	}
+	
+	/**
+	 * Removes the oldest lines from the chat log once it has more than it keeps.
+	 */
+	private void trimLog()
+	{
+		int extra = getLogSize() - maxLines;
+		if(extra <= 0)
+			return;
+		try
+		{
+			chatLog.replaceRange(null, 0, chatLog.getLineStartOffset(extra));
+		}
+		catch(BadLocationException e)
+		{
+			// The line count was just read on this thread, so the offset is always in the log
+		}
+	}
+	
+	/**
+	 * Gets the user-typed text from the chat console.
+	 * @return A String.
+	 */
+	public String getMsg()
+	{
+		String message = chatConsole.getText().replaceAll("\n", "");
+		return message;
+	}
+	
+	/**
+	 * Generates a Window Closing event.
+	 */
+	public void close()
+	{
+		f.dispatchEvent(new WindowEvent(f, WindowEvent.WINDOW_CLOSING));
+	}
+	
+	/**
+	 * Adds listeners for the ENTER key, window closing and scrolling events. On window closing event, the
+	 * program sends a quit message to the server. On an ENTER key event, the program sends the text
+	 * in the chat console to the server and clears the console. When the chat log is scrolled to the top 
+	 * and has room for more lines, older messages are loaded from the server.
+	 */
+	public void addListeners()
+	{
+		jsp.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener()
+		{
+			@Override
+			public void adjustmentValueChanged(AdjustmentEvent e) {
+				if(!rendering && e.getValue() == 0 && getLogSize() < maxLines)
+					client.loadOlder();
+			}
+		});
+		
+		f.addWindowListener(new WindowListener()
+				{
+
+					@Override
+					public void windowActivated(WindowEvent arg0) {
+						// TODO Auto-generated method stub
+						
+					}
+
+					@Override
+					public void windowClosed(WindowEvent arg0) {
+						// TODO Auto-generated method stub
+						
+					}
+
+					@Override
+					public void windowClosing(WindowEvent w) {
+						// TODO Auto-generated method stub
+						client.quit();
+					}
+
+					@Override
+					public void windowDeactivated(WindowEvent arg0) {
+						// TODO Auto-generated method stub
+						
+					}
+
+					@Override
+					public void windowDeiconified(WindowEvent arg0) {
+						// TODO Auto-generated method stub
+						
+					}
+
+					@Override
+					public void windowIconified(WindowEvent arg0) {
+						// TODO Auto-generated method stub
+						
+					}
+
+					@Override
+					public void windowOpened(WindowEvent arg0) {
+						// TODO Auto-generated method stub
+						
+					}
+					
+				});
+		
+		chatConsole.addKeyListener(new KeyListener()
+		{
+			@Override
+			public void keyPressed(KeyEvent e)
+			{
+				if(e.getKeyCode() == KeyEvent.VK_ENTER)
+				{
+					String msg = getMsg();
+					e.consume();
+					clear();
+					if(!msg.isEmpty())
+						client.sendMsg(msg);
+				}
+			}
+			
+			@Override
+			public void keyTyped(KeyEvent e)
+			{}
+			
+			@Override
+			public void keyReleased(KeyEvent e)
+			{}
+		});
+	}
+}
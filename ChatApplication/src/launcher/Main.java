@@ -1,15 +1,21 @@
-package launcher;
-
-/**
- * The launch point of the application. Starts the start menu GUI.
- * @author Bailey Duncan
- * @since May 18, 2017
- * @version 1.0
- */
-public class Main {
-	
-	public static void main(String args[])
-	{	
-			StartMenu start = new StartMenu();
-	}
-}
+package launcher;
+
+/**
+ * The launch point of the application. Starts the start menu GUI, or with command line options 
+ * a server without a display (see ServerMain).
+ * @author Bailey Duncan
+ * @since May 18, 2017
+ * @version 1.0
+ */
+public class Main {
+	
+	public static void main(String args[])
+	{	
+			if(args.length > 0)
+				ServerMain.main(args);
+			else
+			{
+				StartMenu start = new StartMenu();
+			}
+	}
+}
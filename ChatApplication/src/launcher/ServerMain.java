@@ -0,0 +1,146 @@
+package launcher;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Properties;
+
+import server.Server;
+import server.ServerConfig;
+import server.ServerConsole;
+
+/**
+ * The launch point for a server run without a display. Never loads AWT or Swing: the server's status, 
+ * load and errors are printed to the console, and it is started and stopped by typing commands. 
+ * Settings come from a properties file, command line options, or both (the options win), 
+ * using the keys described in ServerConfig.fromProperties().
+ * <pre>
+ * java launcher.ServerMain --port 5000 --cap 50 --name Lobby --mode NIO
+ * java launcher.ServerMain --config server.properties --port 5001
+ * </pre>
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class ServerMain {
+	private static final String USAGE = "Usage: ServerMain [--config file] --port n --cap n [--name title] "
+			+ "[--mode THREADED|VIRTUAL|NIO] [--maxMessages n] [--maxHistoryBytes n] [--journalDir folder] "
+			+ "[--journalSegmentSize n] [--maxRooms n] [--waitingRoom n] "
+			+ "[--backpressure BLOCK|DROP_OLDEST|DISCONNECT] [--outboundQueue n] [--lagTimeout ms] "
+			+ "[--tcpNoDelay true|false] [--sendBuffer bytes] [--receiveBuffer bytes] [--joinHistory n] "
+			+ "[--offHeapHistory true|false]\n"
+			+ "Commands: start, stop, status, quit";
+	
+	public static void main(String args[])
+	{
+		ServerConfig config;
+		try
+		{
+			config = ServerConfig.fromProperties(parseArgs(args));
+		}
+		catch(IllegalArgumentException | IOException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		
+		final Server server = new Server(config, new ServerConsole());
+		if(!server.isListening())
+			System.exit(1);
+		server.updateStatus(false);
+		// Stopping the JVM (Ctrl+C or a kill) kicks the clients the same way the stop command does, 
+		// and waits for them to be told before closing the server
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			@Override
+			public void run() {
+				server.updateStatus(true);
+				try
+				{
+					server.awaitStopped(Server.STOP_TIMEOUT);
+				}
+				catch(InterruptedException e) {}
+				server.close();
+			}
+		});
+		readCommands(server);
+	}
+	
+	/**
+	 * Reads the properties file named by --config, if any, then the other options on top of it. 
+	 * Options are written as "--key value" or "--key=value".
+	 * @param args The command line arguments.
+	 * @return The settings as properties.
+	 * @throws IOException If the properties file can not be read.
+	 * @throws IllegalArgumentException If an argument is not an option or has no value.
+	 */
+	private static Properties parseArgs(String args[]) throws IOException
+	{
+		Properties options = new Properties();
+		for(int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if(!arg.startsWith("--") || arg.length() == 2)
+				throw new IllegalArgumentException("Unknown argument " + arg);
+			int equals = arg.indexOf('=');
+			if(equals != -1)
+				options.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+			else if(i + 1 < args.length)
+				options.setProperty(arg.substring(2), args[++i]);
+			else
+				throw new IllegalArgumentException("Missing value for " + arg);
+		}
+		
+		Properties props = new Properties();
+		String file = options.getProperty("config");
+		if(file != null)
+		{
+			InputStream in = new FileInputStream(file);
+			try
+			{
+				props.load(in);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		props.putAll(options);
+		return props;
+	}
+	
+	/**
+	 * Starts, stops or reports on the server as the host types commands. Returns if the console is closed, 
+	 * leaving the server running, so it can also be run in the background.
+	 * @param server The server.
+	 */
+	private static void readCommands(Server server)
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		try
+		{
+			String command;
+			while((command = in.readLine()) != null)
+			{
+				command = command.trim();
+				if(command.equalsIgnoreCase("start"))
+					server.updateStatus(false);
+				else if(command.equalsIgnoreCase("stop"))
+					server.updateStatus(true);
+				else if(command.equalsIgnoreCase("status"))
+					server.log(server.isOnline() ? "Status: Online" : "Status: Offline");
+				else if(command.equalsIgnoreCase("quit") || command.equalsIgnoreCase("exit"))
+					System.exit(0);
+				else if(!command.isEmpty())
+					System.err.println(USAGE);
+			}
+		}
+		catch(IOException e)
+		{
+			// No console, keep serving
+		}
+	}
+}
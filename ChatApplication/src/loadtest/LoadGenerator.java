@@ -0,0 +1,391 @@
+package loadtest;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import server.Server;
+import server.ServerConfig;
+import server.ServerMode;
+import server.ServerView;
+
+/**
+ * Load tests a server in this JVM over loopback. Starts a Server, connects simulated clients which all 
+ * post at a fixed rate, and reports the send to receive latency of every message delivered to every 
+ * client, the throughput and the CPU time used by the server's threads as JSON, so runs can be compared 
+ * between releases. Progress goes to the error stream so the output stays machine readable.
+ * <pre>
+ * java loadtest.LoadGenerator --clients 100 --rate 10 --duration 30 --mode NIO --out result.json
+ * </pre>
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class LoadGenerator {
+	private static final String USAGE = "Usage: LoadGenerator [--clients n] [--rate messages per second per client] "
+			+ "[--duration seconds] [--warmup seconds] [--mode THREADED|VIRTUAL|NIO] [--protocol binary|text] "
+			+ "[--size message length] [--maxMessages n] [--out file]";
+	
+	private int clients, rate, duration, warmup, size, maxMessages;
+	private ServerMode mode;
+	private boolean binary;
+	private ArrayList<SimulatedClient> sims;
+	private ArrayList<Thread> readers;
+	private HashSet<Long> loadThreads;
+	private AtomicLong sent;
+	private ThreadMXBean threadBean;
+	
+	/**
+	 * Constructor for the load generator.
+	 * @param p The options, see USAGE.
+	 * @throws IllegalArgumentException If an option is invalid.
+	 */
+	public LoadGenerator(Properties p)
+	{
+		clients = intOption(p, "clients", 10);
+		rate = intOption(p, "rate", 5);
+		duration = intOption(p, "duration", 10);
+		warmup = intOption(p, "warmup", 2);
+		size = intOption(p, "size", 64);
+		maxMessages = intOption(p, "maxMessages", 100000);
+		String protocol = p.getProperty("protocol", "binary");
+		if(!protocol.equals("binary") && !protocol.equals("text"))
+			throw new IllegalArgumentException("The protocol must be binary or text.");
+		binary = protocol.equals("binary");
+		try
+		{
+			mode = ServerMode.valueOf(p.getProperty("mode", "NIO").toUpperCase());
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException("The mode must be THREADED, VIRTUAL or NIO.");
+		}
+		if(clients < 1 || rate < 1 || duration < 1 || warmup < 0)
+			throw new IllegalArgumentException("The clients, rate and duration must be positive.");
+		sims = new ArrayList<SimulatedClient>();
+		readers = new ArrayList<Thread>();
+		loadThreads = new HashSet<Long>();
+		sent = new AtomicLong();
+		threadBean = ManagementFactory.getThreadMXBean();
+	}
+	
+	public static void main(String args[])
+	{
+		Properties p = new Properties();
+		for(int i = 0; i < args.length; i++)
+		{
+			if(!args[i].startsWith("--") || i + 1 == args.length)
+			{
+				System.err.println(USAGE);
+				System.exit(1);
+			}
+			p.setProperty(args[i].substring(2), args[++i]);
+		}
+		try
+		{
+			String json = new LoadGenerator(p).run();
+			String file = p.getProperty("out");
+			if(file == null)
+				System.out.println(json);
+			else
+			{
+				Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+				w.write(json);
+				w.write('\n');
+				w.close();
+			}
+			System.exit(0);
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+		}
+		catch(Exception e)
+		{
+			System.err.println("Load test failed: " + e);
+		}
+		System.exit(1);
+	}
+	
+	/**
+	 * Runs the load test.
+	 * @return The results as JSON.
+	 * @throws Exception If the server can not be started or a client can not connect.
+	 */
+	public String run() throws Exception
+	{
+		final AtomicInteger serverErrors = new AtomicInteger();
+		ServerConfig config = new ServerConfig(0, "Load Test", clients);
+		config.setMode(mode);
+		config.setMaxMessages(maxMessages);
+		Server server = new Server(config, new ServerView()
+		{
+			@Override
+			public void statusChanged(boolean online) {}
+			
+			@Override
+			public void updateLoad(int clientLoad) {}
+			
+			@Override
+			public void log(String msg)
+			{
+				System.err.println(msg);
+			}
+			
+			@Override
+			public void error(String error)
+			{
+				serverErrors.incrementAndGet();
+				System.err.println(error);
+			}
+		});
+		if(!server.isListening())
+			throw new IOException("The server could not open a port");
+		server.updateStatus(false);
+		loadThreads.add(Thread.currentThread().getId());
+		
+		System.err.println("Connecting " + clients + " clients to a " + mode + " server...");
+		for(int i = 0; i < clients; i++)
+		{
+			SimulatedClient sim = new SimulatedClient("127.0.0.1", server.getLocalPort(), "sim" + i, binary, size);
+			Thread reader = new Thread(sim, "Load Client " + i);
+			reader.setDaemon(true);
+			reader.start();
+			loadThreads.add(reader.getId());
+			sims.add(sim);
+			readers.add(reader);
+			sim.join();
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		for(SimulatedClient sim : sims)
+			while(!sim.hasJoined())
+			{
+				if(System.nanoTime() > deadline)
+					throw new IOException("Clients did not join within 10 seconds");
+				Thread.sleep(10);
+			}
+		
+		ScheduledExecutorService senders = startSending();
+		System.err.println("Warming up for " + warmup + " s...");
+		Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+		
+		for(SimulatedClient sim : sims)
+			sim.setRecording(true);
+		HashMap<Long, Long> cpuStart = serverThreadCpu();
+		long sentStart = sent.get();
+		long receivedStart = totalReceived();
+		long start = System.nanoTime();
+		System.err.println("Measuring for " + duration + " s...");
+		Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+		long elapsed = System.nanoTime() - start;
+		long sentEnd = sent.get();
+		long receivedEnd = totalReceived();
+		long serverCpu = cpuSince(cpuStart);
+		for(SimulatedClient sim : sims)
+			sim.setRecording(false);
+		
+		// Let the messages already sent arrive before counting what was lost
+		senders.shutdown();
+		senders.awaitTermination(5, TimeUnit.SECONDS);
+		long expected = sent.get() * clients;
+		deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while(totalReceived() < expected && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		long undelivered = expected - totalReceived();
+		
+		LatencyHistogram latencies = new LatencyHistogram();
+		int clientErrors = 0;
+		for(int i = 0; i < sims.size(); i++)
+		{
+			sims.get(i).quit();
+			readers.get(i).join(1000);
+			latencies.add(sims.get(i).getLatencies());
+			if(sims.get(i).getError() != null)
+				clientErrors++;
+		}
+		server.updateStatus(true);
+		server.awaitStopped(Server.STOP_TIMEOUT);
+		server.close();
+		
+		double seconds = elapsed / 1e9;
+		StringBuilder json = new StringBuilder("{");
+		json.append("\"config\":{\"clients\":").append(clients)
+			.append(",\"ratePerClient\":").append(rate)
+			.append(",\"durationSeconds\":").append(duration)
+			.append(",\"warmupSeconds\":").append(warmup)
+			.append(",\"mode\":\"").append(mode.name())
+			.append("\",\"protocol\":\"").append(binary ? "binary" : "text")
+			.append("\",\"messageSize\":").append(size)
+			.append(",\"maxMessages\":").append(maxMessages)
+			.append(",\"cpus\":").append(Runtime.getRuntime().availableProcessors())
+			.append(",\"javaVersion\":\"").append(System.getProperty("java.version")).append("\"},");
+		json.append("\"throughput\":{\"sentPerSecond\":").append(format((sentEnd - sentStart) / seconds))
+			.append(",\"deliveredPerSecond\":").append(format((receivedEnd - receivedStart) / seconds)).append("},");
+		json.append("\"latencyMicros\":{\"count\":").append(latencies.getCount())
+			.append(",\"mean\":").append(format(latencies.getMean()))
+			.append(",\"p50\":").append(latencies.getPercentile(50))
+			.append(",\"p90\":").append(latencies.getPercentile(90))
+			.append(",\"p99\":").append(latencies.getPercentile(99))
+			.append(",\"p999\":").append(latencies.getPercentile(99.9))
+			.append(",\"max\":").append(latencies.getMax()).append("},");
+		json.append("\"serverCpu\":{\"millis\":").append(serverCpu / 1000000)
+			.append(",\"percentOfOneCore\":").append(format(serverCpu / (double) elapsed * 100)).append("},");
+		json.append("\"sent\":").append(sent.get())
+			.append(",\"undelivered\":").append(undelivered)
+			.append(",\"clientErrors\":").append(clientErrors)
+			.append(",\"serverErrors\":").append(serverErrors.get())
+			.append("}");
+		return json.toString();
+	}
+	
+	/**
+	 * Starts posting from every client at the configured rate, with the clients spread out evenly over 
+	 * each period so they do not all send at once.
+	 * @return The executor running the senders.
+	 */
+	private ScheduledExecutorService startSending()
+	{
+		int threads = Math.min(clients, Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+		ScheduledExecutorService senders = Executors.newScheduledThreadPool(threads, new ThreadFactory()
+		{
+			private int count;
+			
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Load Sender " + count++);
+				t.setDaemon(true);
+				synchronized(loadThreads)
+				{
+					loadThreads.add(t.getId());
+				}
+				return t;
+			}
+		});
+		final long period = TimeUnit.SECONDS.toNanos(1) / rate;
+		long now = System.nanoTime();
+		for(int i = 0; i < clients; i++)
+		{
+			final SimulatedClient sim = sims.get(i);
+			final long offset = period * i / clients;
+			final long first = now + offset;
+			senders.scheduleAtFixedRate(new Runnable()
+			{
+				private long count;
+				
+				@Override
+				public void run() {
+					try
+					{
+						sim.post(first + count++ * period);
+						sent.incrementAndGet();
+					}
+					catch(IOException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}
+			}, offset, period, TimeUnit.NANOSECONDS);
+		}
+		return senders;
+	}
+	
+	/**
+	 * Adds up the messages received by every client.
+	 * @return The total.
+	 */
+	private long totalReceived()
+	{
+		long total = 0;
+		for(SimulatedClient sim : sims)
+			total += sim.getReceived();
+		return total;
+	}
+	
+	/**
+	 * Gets the CPU time used so far by every thread which is not part of the load generator, 
+	 * which are the server's threads.
+	 * @return The CPU time in nanoseconds of each thread, by thread ID.
+	 */
+	private HashMap<Long, Long> serverThreadCpu()
+	{
+		HashMap<Long, Long> cpu = new HashMap<Long, Long>();
+		if(!threadBean.isThreadCpuTimeSupported())
+			return cpu;
+		synchronized(loadThreads)
+		{
+			for(long id : threadBean.getAllThreadIds())
+			{
+				long time = threadBean.getThreadCpuTime(id);
+				if(!loadThreads.contains(id) && time != -1)
+					cpu.put(id, time);
+			}
+		}
+		return cpu;
+	}
+	
+	/**
+	 * Gets the CPU time the server's threads have used since a snapshot.
+	 * @param start The snapshot.
+	 * @return The CPU time in nanoseconds.
+	 */
+	private long cpuSince(HashMap<Long, Long> start)
+	{
+		long total = 0;
+		for(Map.Entry<Long, Long> e : serverThreadCpu().entrySet())
+		{
+			Long before = start.get(e.getKey());
+			total += e.getValue() - (before == null ? 0 : before);
+		}
+		return total;
+	}
+	
+	/**
+	 * Reads a whole number option.
+	 * @param p The options.
+	 * @param key The option's name.
+	 * @param def The value to use if the option is not given.
+	 * @return The option's value.
+	 * @throws IllegalArgumentException If the option is not a number.
+	 */
+	private static int intOption(Properties p, String key, int def)
+	{
+		String value = p.getProperty(key);
+		if(value == null)
+			return def;
+		try
+		{
+			return Integer.parseInt(value.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IllegalArgumentException("The " + key + " must be a number.");
+		}
+	}
+	
+	/**
+	 * Formats a number for the JSON output with at most two decimals.
+	 * @param value The number.
+	 * @return The formatted number.
+	 */
+	private static String format(double value)
+	{
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+}
@@ -0,0 +1,237 @@
+package loadtest;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import chat_constants.BinaryProtocol;
+import chat_constants.FrameReader;
+import chat_constants.Protocol;
+
+/**
+ * A chat client without a ClientGUI, for load testing. It connects and subscribes the same way 
+ * client.Client does, using either protocol, then its thread reads everything the server pushes. 
+ * Messages it posts carry the time they were meant to be sent, and every message received from any 
+ * simulated client records how long it took to arrive.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class SimulatedClient implements Runnable {
+	/** Starts the part of each posted message after the handle, followed by the send time. */
+	static final String MARKER = "load ";
+	
+	private Socket sock;
+	private DataOutputStream out;
+	private BufferedInputStream in;
+	private boolean binary;
+	private String handle;
+	private LatencyHistogram latencies;
+	private String padding;
+	private volatile boolean recording;
+	private volatile long received;
+	private volatile boolean joined;
+	private volatile IOException error;
+	
+	/**
+	 * Constructor for the simulated client, connects to the server.
+	 * @param host The server's address.
+	 * @param port The server's port.
+	 * @param handle The client's username in the chat.
+	 * @param binary True to use the binary protocol, false for the text protocol.
+	 * @param messageSize The rough length of each message posted, in characters.
+	 * @throws IOException If the server can not be reached.
+	 */
+	public SimulatedClient(String host, int port, String handle, boolean binary, int messageSize) throws IOException
+	{
+		sock = new Socket(host, port);
+		sock.setTcpNoDelay(true);
+		out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream()));
+		in = new BufferedInputStream(sock.getInputStream());
+		this.handle = handle;
+		this.binary = binary;
+		latencies = new LatencyHistogram();
+		StringBuilder pad = new StringBuilder(" ");
+		while(pad.length() < messageSize - handle.length() - 30)
+			pad.append('x');
+		padding = pad.toString();
+	}
+	
+	/**
+	 * Sends the hello (for the binary protocol), subscribes and joins the chat.
+	 * @throws IOException If the server can not be written to.
+	 */
+	public void join() throws IOException
+	{
+		if(binary)
+			BinaryProtocol.writeHello(out, BinaryProtocol.VERSION);
+		send(BinaryProtocol.SUBSCRIBE, Protocol.SUBSCRIBE);
+		send(BinaryProtocol.MESSAGE, handle + " joined the chat");
+	}
+	
+	/**
+	 * Posts a message stamped with the time it was meant to be sent. Stamping the intended time rather 
+	 * than the actual one means a sender held up by a slow server still counts the delay.
+	 * @param intendedNanos The System.nanoTime() the message was scheduled for.
+	 * @throws IOException If the server can not be written to.
+	 */
+	public void post(long intendedNanos) throws IOException
+	{
+		send(BinaryProtocol.MESSAGE, handle + ": " + MARKER + intendedNanos + padding);
+	}
+	
+	/**
+	 * Tells the server the client is leaving and closes the connection.
+	 */
+	public void quit()
+	{
+		try
+		{
+			send(BinaryProtocol.QUIT, "QUIT");
+		}
+		catch(IOException e) {}
+		try
+		{
+			sock.close();
+		}
+		catch(IOException e) {}
+	}
+	
+	/**
+	 * Sends a command or message in whichever protocol the client is using.
+	 * @param opcode The binary protocol opcode.
+	 * @param text The payload for a message, or the line for a text protocol command.
+	 * @throws IOException If the server can not be written to.
+	 */
+	private void send(byte opcode, String text) throws IOException
+	{
+		if(binary)
+		{
+			byte payload[] = opcode == BinaryProtocol.MESSAGE ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+			out.writeByte(opcode);
+			out.writeInt(payload.length);
+			out.write(payload);
+		}
+		else
+		{
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+			out.write('\n');
+		}
+		out.flush();
+	}
+	
+	/**
+	 * Reads what the server pushes until the connection closes, recording the latency of every load 
+	 * test message while recording is on.
+	 */
+	public void run()
+	{
+		try
+		{
+			if(binary)
+			{
+				int version = BinaryProtocol.readHello(in);
+				if(version == 0)
+					throw new IOException("The server did not answer the binary protocol hello");
+				FrameReader frames = new FrameReader(in, BinaryProtocol.MAX_PAYLOAD);
+				frames.setCompression(version >= BinaryProtocol.COMPRESSION_VERSION);
+				int opcode;
+				while((opcode = frames.readFrame()) != -1)
+				{
+					if(opcode == BinaryProtocol.END)
+						joined = true;
+					else if(opcode == BinaryProtocol.MESSAGE)
+						receive(frames.getText());
+					else if(opcode == BinaryProtocol.FULL || opcode == BinaryProtocol.SHUTDOWN)
+						break;
+				}
+			}
+			else
+			{
+				BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+				String read;
+				while((read = lines.readLine()) != null)
+				{
+					if(read.equals("\0"))
+						joined = true;
+					else if(read.equals(Protocol.SERVERFULL) || read.equals(Protocol.SERVERSHUTDOWN))
+						break;
+					else
+						receive(read);
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			if(!sock.isClosed())
+				error = e;
+		}
+	}
+	
+	/**
+	 * Records the latency of a load test message.
+	 * @param msg The message received.
+	 */
+	private void receive(String msg)
+	{
+		long now = System.nanoTime();
+		int start = msg.indexOf(MARKER);
+		if(start == -1)
+			return;
+		start += MARKER.length();
+		int end = msg.indexOf(' ', start);
+		long sent = Long.parseLong(end == -1 ? msg.substring(start) : msg.substring(start, end));
+		received++;
+		if(recording)
+			latencies.record((now - sent) / 1000);
+	}
+	
+	/**
+	 * Turns latency recording on or off, so warm up messages are left out.
+	 * @param recording True to record.
+	 */
+	public void setRecording(boolean recording)
+	{
+		this.recording = recording;
+	}
+	
+	/**
+	 * Checks if the server has answered the client's join.
+	 * @return True once the first reply has been read.
+	 */
+	public boolean hasJoined()
+	{
+		return joined;
+	}
+	
+	/**
+	 * Gets the number of load test messages received. Only written by the client's own thread.
+	 * @return The count.
+	 */
+	public long getReceived()
+	{
+		return received;
+	}
+	
+	/**
+	 * Gets the latencies recorded, in microseconds. Only safe to read once the client's thread has finished.
+	 * @return The histogram.
+	 */
+	public LatencyHistogram getLatencies()
+	{
+		return latencies;
+	}
+	
+	/**
+	 * Gets the error which stopped the client reading, if any.
+	 * @return The error, or null.
+	 */
+	public IOException getError()
+	{
+		return error;
+	}
+}
@@ -0,0 +1,22 @@
+package server;
+
+/**
+ * What the server does when a subscribed client falls further behind than its outbound queue allows.
+ * A connection's queue is the messages added to its chatroom which have not been written to it yet,
+ * so its depth is counted in messages.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public enum BackpressurePolicy {
+	/**
+	 * Never skips a message. With a thread per client, whoever adds a message waits for a client which is too far
+	 * behind to catch up. An NIO event loop can not wait, so there the client just lags. Either way a client which
+	 * is still too far behind after the lag timeout is disconnected.
+	 */
+	BLOCK,
+	/** Skips the oldest messages a client which is too far behind has not recieved. */
+	DROP_OLDEST,
+	/** Disconnects a client which has been too far behind for longer than the lag timeout. */
+	DISCONNECT
+}
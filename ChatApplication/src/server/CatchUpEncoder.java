@@ -0,0 +1,505 @@
+package server;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+import chat_constants.BinaryProtocol;
+import chat_constants.Protocol;
+
+/**
+ * Encodes the chat messages a client has not recieved yet, and the replies it is sent, as lines or binary frames 
+ * into a reusable per-connection buffer, which is written out in batches. Large batches for a binary client are compressed.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class CatchUpEncoder {
+	/** The largest number of bytes encoded before they have to be written out. */
+	public static final int BATCH_SIZE = 8 * 1024;
+	/** The largest number of bytes encoded before they have to be written out, for a client which is sent compressed batches. */
+	public static final int COMPRESSED_BATCH_SIZE = 32 * 1024;
+	/** The smallest batch which is compressed. */
+	public static final int COMPRESS_THRESHOLD = 4 * 1024;
+	/** Deflaters and their output buffers, shared by every connection since only a catch-up needs one, and only briefly. */
+	private static final ConcurrentLinkedQueue<Packer> PACKERS = new ConcurrentLinkedQueue<Packer>();
+	private static final int INITIAL_SIZE = 512;
+	
+	private ByteBuffer buf;
+	private volatile int MsgID = -1;
+	private boolean binary, compressed, paging, pageOpen;
+	private int batchSize = BATCH_SIZE;
+	private int history, olderID = -1, firstSent, pageNext, pageEnd;
+	
+	/**
+	 * A deflater with the buffer it deflates into.
+	 */
+	private static final class Packer
+	{
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		byte out[] = new byte[COMPRESSED_BATCH_SIZE];
+	}
+	
+	/**
+	 * Constructor for the encoder, the client has not recieved any message yet.
+	 */
+	public CatchUpEncoder()
+	{
+		buf = ByteBuffer.allocate(INITIAL_SIZE);
+	}
+	
+	/**
+	 * Gets the buffer holding the encoded bytes, in write mode (the bytes are before its position).
+	 * @return The buffer.
+	 */
+	public ByteBuffer getBuffer()
+	{
+		return buf;
+	}
+	
+	/**
+	 * Gets the ID of the last message which has been encoded. It is volatile so other threads can see how far 
+	 * behind the client is.
+	 * @return The message ID, -1 if none has.
+	 */
+	public int getMsgID()
+	{
+		return MsgID;
+	}
+	
+	/**
+	 * Switches between encoding lines for the text protocol and frames for the binary protocol.
+	 * @param binary True to encode binary frames.
+	 */
+	public void setBinary(boolean binary)
+	{
+		this.binary = binary;
+	}
+	
+	/**
+	 * Turns compressing large batches on or off. Only for a binary protocol client which agreed to a version 
+	 * supporting COMPRESSED frames.
+	 * @param compressed True to compress large batches.
+	 */
+	public void setCompressed(boolean compressed)
+	{
+		this.compressed = compressed;
+		batchSize = compressed ? COMPRESSED_BATCH_SIZE : BATCH_SIZE;
+	}
+	
+	/**
+	 * Sets how many of a room's most recent messages are sent when the client starts reading it, which is 
+	 * also the size of each page of older messages.
+	 * @param history The number of messages, 0 to send every message the room still has.
+	 */
+	public void setHistory(int history)
+	{
+		this.history = history;
+	}
+	
+	/**
+	 * Turns telling the client about older messages on or off. Only for a binary protocol client which agreed 
+	 * to a version supporting OLDER frames, any other client just gets the most recent messages.
+	 * @param paging True to encode an OLDER frame when the start of a room's history is not sent.
+	 */
+	public void setPaging(boolean paging)
+	{
+		this.paging = paging;
+	}
+	
+	/**
+	 * Starts over for a different chatroom, the client has not recieved any of its messages yet. Only the most 
+	 * recent messages allowed by the history limit will be sent. Bytes already encoded are kept.
+	 * @param chat The chatroom the client is now reading.
+	 */
+	public void reset(Chatroom chat)
+	{
+		int start = history > 0 ? Math.max(0, chat.getSize() - history) : 0;
+		MsgID = start - 1;
+		firstSent = start;
+		olderID = paging && start > chat.getFirstID() ? start : -1;
+		pageOpen = false;
+	}
+	
+	/**
+	 * Starts a page of the messages before one the client already has, which the next call to encode() sends 
+	 * ahead of any new messages. The page is the history limit's worth of messages, or every older one if there 
+	 * is no limit, and never overlaps the messages already sent from this room.
+	 * @param chat The chatroom the client is reading.
+	 * @param before The ID of the oldest message the client has.
+	 */
+	public void startPage(Chatroom chat, int before)
+	{
+		int end = Math.max(0, Math.min(before, firstSent));
+		int start = Math.max(chat.getFirstID(), history > 0 ? end - history : 0);
+		pageNext = Math.min(start, end);
+		firstSent = pageNext;
+		pageEnd = end;
+		pageOpen = true;
+		String id = Integer.toString(pageNext);
+		encodeReply(BinaryProtocol.PAGE, id, Protocol.HISTORYPAGE + id);
+	}
+	
+	/**
+	 * Skips messages the client has not recieved, encoding a notice telling it how many it missed instead.
+	 * @param count The number of messages to skip.
+	 */
+	public void skip(int count)
+	{
+		MsgID += count;
+		encodeNotice(Protocol.MESSAGESDROPPED + count + "]");
+	}
+	
+	/**
+	 * Encodes as many of the messages the client has not recieved as fit in the current batch. Messages which 
+	 * have been evicted from the chatroom are replaced by a single history truncated notice.
+	 * @param chat The chatroom to read messages from.
+	 * @return True if the client is caught up and the terminator has been encoded, false if the 
+	 * buffer is full and has to be written out before encoding the rest.
+	 */
+	public boolean encode(Chatroom chat)
+	{
+		int start = buf.position();
+		boolean done = encodeBatch(chat);
+		int size = buf.position() - start;
+		// A batch grown to fit a message near the largest payload is sent as it is, so a client never has to inflate more than that
+		if(compressed && size >= COMPRESS_THRESHOLD && size < BinaryProtocol.MAX_PAYLOAD)
+			deflate(start);
+		return done;
+	}
+	
+	/**
+	 * Encodes as many of the messages the client has not recieved as fit in the current batch.
+	 * @param chat The chatroom to read messages from.
+	 * @return True if the terminator has been encoded, false if the buffer is full.
+	 */
+	private boolean encodeBatch(Chatroom chat)
+	{
+		if(olderID != -1)
+		{
+			String id = Integer.toString(olderID);
+			if(!reserve(Protocol.OLDERMESSAGES + id))
+				return false;
+			put(BinaryProtocol.OLDER, id, Protocol.OLDERMESSAGES + id);
+			olderID = -1;
+		}
+		while(pageOpen)
+		{
+			if(pageNext == pageEnd)
+			{
+				if(!reserve(""))
+					return false;
+				put(BinaryProtocol.END, "", "\0");
+				pageOpen = false;
+				break;
+			}
+			// A message evicted since the page was asked for is left out
+			if(!putMessage(chat, pageNext))
+				return false;
+			pageNext++;
+		}
+		while(MsgID < chat.getSize() - 1)
+		{
+			int next = MsgID + 1;
+			if(chat.getBodyLength(next) == -1)
+			{
+				if(!reserve(Protocol.HISTORYTRUNCATED))
+					return false;
+				put(BinaryProtocol.NOTICE, Protocol.HISTORYTRUNCATED, Protocol.HISTORYTRUNCATED);
+				next = Math.max(next, chat.getFirstID() - 1);
+			}
+			else if(!putMessage(chat, next))
+				return false;
+			MsgID = next;
+		}
+		if(!reserve(""))
+			return false;
+		put(BinaryProtocol.END, "", "\0");
+		return true;
+	}
+	
+	/**
+	 * Encodes a chat message straight from its record's UTF-8 bytes, as "sender: body".
+	 * @param chat The chatroom to read the message from.
+	 * @param msgID The message's ID.
+	 * @return False if the buffer has to be emptied first, true if the message was encoded or has been evicted.
+	 */
+	private boolean putMessage(Chatroom chat, int msgID)
+	{
+		int bodyLength = chat.getBodyLength(msgID);
+		if(bodyLength == -1)
+			return true;
+		byte sender[] = chat.getSender(msgID);
+		int length = sender == null ? bodyLength : sender.length + 2 + bodyLength;
+		if(!reserveBytes(length + BinaryProtocol.HEADER_SIZE))
+			return false;
+		int start = buf.position();
+		if(binary)
+		{
+			buf.put(BinaryProtocol.MESSAGE);
+			buf.putInt(length);
+		}
+		if(sender != null)
+		{
+			buf.put(sender);
+			buf.put((byte) ':');
+			buf.put((byte) ' ');
+		}
+		// Evicted since its length was read, so it is left out like any other evicted message
+		if(!chat.copyBody(msgID, buf))
+		{
+			buf.position(start);
+			return true;
+		}
+		if(!binary)
+			buf.put((byte) '\n');
+		return true;
+	}
+	
+	/**
+	 * Replaces the frames encoded from a position onwards with a COMPRESSED frame holding them, unless 
+	 * deflating them does not make them smaller.
+	 * @param start The position of the first frame to compress.
+	 */
+	private void deflate(int start)
+	{
+		int size = buf.position() - start;
+		Packer packer = PACKERS.poll();
+		if(packer == null)
+			packer = new Packer();
+		try
+		{
+			if(packer.out.length < size)
+				packer.out = new byte[size];
+			Deflater deflater = packer.deflater;
+			deflater.reset();
+			deflater.setInput(buf.array(), buf.arrayOffset() + start, size);
+			deflater.finish();
+			int packed = 0;
+			while(!deflater.finished() && packed < size)
+				packed += deflater.deflate(packer.out, packed, size - packed);
+			// The COMPRESSED frame has a header and the inflated size, and has to fit where the frames were
+			if(!deflater.finished() || packed + BinaryProtocol.HEADER_SIZE + 4 >= size)
+				return;
+			buf.position(start);
+			buf.put(BinaryProtocol.COMPRESSED);
+			buf.putInt(packed + 4);
+			buf.putInt(size);
+			buf.put(packer.out, 0, packed);
+		}
+		finally
+		{
+			PACKERS.offer(packer);
+		}
+	}
+	
+	/**
+	 * Encodes every message the client has not recieved and writes them to a blocking stream in batches.
+	 * @param chat The chatroom to read messages from.
+	 * @param out The client's output stream.
+	 * @return The number of bytes written.
+	 * @throws IOException If the stream can not be written.
+	 */
+	public long writeUpdate(Chatroom chat, OutputStream out) throws IOException
+	{
+		long written = 0;
+		while(!encode(chat))
+			written += writeTo(out);
+		return written + writeTo(out);
+	}
+	
+	/**
+	 * Encodes the reply to a binary protocol hello. Must be the first thing sent on the connection.
+	 * @param version The protocol version the connection will use.
+	 */
+	public void encodeHello(int version)
+	{
+		ensureCapacity(buf.position() + BinaryProtocol.HELLO_SIZE);
+		buf.put(BinaryProtocol.MAGIC);
+		buf.put((byte) version);
+	}
+	
+	/**
+	 * Encodes a line for the user which is not a chat message, such as the list of rooms.
+	 * @param text The notice.
+	 */
+	public void encodeNotice(String text)
+	{
+		encodeReply(BinaryProtocol.NOTICE, text, text);
+	}
+	
+	/**
+	 * Encodes the notice telling the client which room it is now in.
+	 * @param room The room's name.
+	 */
+	public void encodeRoomChanged(String room)
+	{
+		encodeReply(BinaryProtocol.ROOM, room, Protocol.ROOMCHANGED + room);
+	}
+	
+	/**
+	 * Encodes the notice telling the client the server is full.
+	 */
+	public void encodeServerFull()
+	{
+		encodeReply(BinaryProtocol.FULL, Protocol.SERVERFULL, Protocol.SERVERFULL);
+	}
+	
+	/**
+	 * Encodes the notice telling the client the server has been stopped.
+	 */
+	public void encodeShutdown()
+	{
+		encodeReply(BinaryProtocol.SHUTDOWN, Protocol.SERVERSHUTDOWN, Protocol.SERVERSHUTDOWN);
+	}
+	
+	/**
+	 * Encodes a single reply, growing the buffer past the batch size if it has to.
+	 * @param opcode The frame's opcode in the binary protocol.
+	 * @param payload The frame's payload in the binary protocol.
+	 * @param line The line sent instead in the text protocol, without a newline character.
+	 */
+	private void encodeReply(byte opcode, String payload, String line)
+	{
+		String text = binary ? payload : line;
+		if(!reserve(text))
+			ensureCapacity(buf.position() + maxLength(text));
+		put(opcode, payload, line);
+	}
+	
+	/**
+	 * Writes the encoded bytes to a blocking stream and empties the buffer.
+	 * @param out The stream to write to.
+	 * @return The number of bytes written.
+	 * @throws IOException If the stream can not be written.
+	 */
+	public int writeTo(OutputStream out) throws IOException
+	{
+		int written = buf.position();
+		out.write(buf.array(), 0, written);
+		out.flush();
+		buf.clear();
+		return written;
+	}
+	
+	/**
+	 * Makes sure a line or frame will fit in the buffer, growing it up to the batch size. One which can not fit 
+	 * even in an empty batch gets a buffer of its own size.
+	 * @param line The text to fit.
+	 * @return True if it fits, false if the buffer has to be emptied first.
+	 */
+	private boolean reserve(String line)
+	{
+		return reserveBytes(maxLength(line));
+	}
+	
+	/**
+	 * Makes sure a number of bytes will fit in the buffer, growing it up to the batch size. More than can fit 
+	 * even in an empty batch gets a buffer of their own size.
+	 * @param needed The number of bytes.
+	 * @return True if they fit, false if the buffer has to be emptied first.
+	 */
+	private boolean reserveBytes(int needed)
+	{
+		if(buf.remaining() >= needed)
+			return true;
+		if(buf.capacity() < batchSize)
+		{
+			ensureCapacity(Math.min(batchSize, Math.max(buf.capacity() * 2, buf.position() + needed)));
+			if(buf.remaining() >= needed)
+				return true;
+		}
+		if(buf.position() > 0)
+			return false;
+		ensureCapacity(needed);
+		return true;
+	}
+	
+	/**
+	 * Replaces the buffer with a bigger one, keeping its contents.
+	 * @param capacity The new minimum capacity.
+	 */
+	private void ensureCapacity(int capacity)
+	{
+		if(buf.capacity() >= capacity)
+			return;
+		ByteBuffer bigger = ByteBuffer.allocate(capacity);
+		buf.flip();
+		bigger.put(buf);
+		buf = bigger;
+	}
+	
+	/**
+	 * The most bytes some text can take once encoded, three per character plus the newline or frame header.
+	 * @param line The text.
+	 * @return The number of bytes.
+	 */
+	private static int maxLength(String line)
+	{
+		return line.length() * 3 + BinaryProtocol.HEADER_SIZE;
+	}
+	
+	/**
+	 * Encodes a frame or a line, depending on the protocol, directly into the buffer's array. 
+	 * The caller must have reserved room for it.
+	 * @param opcode The frame's opcode.
+	 * @param payload The frame's payload.
+	 * @param line The line, without a newline character.
+	 */
+	private void put(byte opcode, String payload, String line)
+	{
+		if(binary)
+		{
+			int start = buf.position();
+			buf.put(opcode);
+			buf.position(start + BinaryProtocol.HEADER_SIZE);
+			putText(payload);
+			buf.putInt(start + 1, buf.position() - start - BinaryProtocol.HEADER_SIZE);
+		}
+		else
+		{
+			putText(line);
+			buf.put((byte) '\n');
+		}
+	}
+	
+	/**
+	 * Encodes text as UTF-8 directly into the buffer's array.
+	 * @param line The text.
+	 */
+	private void putText(String line)
+	{
+		byte a[] = buf.array();
+		int p = buf.arrayOffset() + buf.position();
+		int length = line.length();
+		for(int i = 0; i < length; i++)
+		{
+			char c = line.charAt(i);
+			if(c < 0x80)
+				a[p++] = (byte) c;
+			else if(c < 0x800)
+			{
+				a[p++] = (byte) (0xC0 | (c >> 6));
+				a[p++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(line.charAt(i + 1)))
+			{
+				int cp = Character.toCodePoint(c, line.charAt(++i));
+				a[p++] = (byte) (0xF0 | (cp >> 18));
+				a[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				a[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				a[p++] = (byte) (0x80 | (cp & 0x3F));
+			}
+			else if(Character.isSurrogate(c))
+				a[p++] = (byte) '?';
+			else
+			{
+				a[p++] = (byte) (0xE0 | (c >> 12));
+				a[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				a[p++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		buf.position(p - buf.arrayOffset());
+	}
+}
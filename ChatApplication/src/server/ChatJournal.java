@@ -0,0 +1,466 @@
+package server;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import chat_constants.Protocol;
+
+/**
+ * An optional append-only journal of a chatroom's messages in memory mapped segment files, so the chat survives 
+ * the server process exiting or crashing. A segment is only forced to disk when it is sealed and when the server is stopped, 
+ * so a power loss can lose the messages since then. On startup the chat is restored with the journal as its archive.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class ChatJournal implements ChatroomListener, MessageArchive {
+	/** The default size of each segment file. */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	private static final int MAGIC = 0x43484A32;
+	static final int FILE_HEADER_SIZE = 16;
+	static final int HEADER_SIZE = 24;
+	private static final String SUFFIX = ".journal";
+	
+	private File dir;
+	private int segmentSize;
+	private ArrayList<Long> segmentStarts;
+	private ArrayList<RecoveredSegment> recovered;
+	private MappedByteBuffer current;
+	private int currentCount;
+	private long nextSeq;
+	private int journaledMsgs;
+	private CRC32 crc;
+	private ServerView view;
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	/**
+	 * A segment found on startup, and (once indexed) where each of its records starts.
+	 */
+	private static final class RecoveredSegment {
+		final MappedByteBuffer buf;
+		final int firstID;
+		final int count;
+		volatile int offsets[];
+		
+		RecoveredSegment(MappedByteBuffer buf, int firstID, int count, int offsets[])
+		{
+			this.buf = buf;
+			this.firstID = firstID;
+			this.count = count;
+			this.offsets = offsets;
+		}
+		
+		/**
+		 * Gets the record offsets, walking the record headers the first time.
+		 */
+		int[] offsets()
+		{
+			int index[] = offsets;
+			if(index != null)
+				return index;
+			synchronized(this)
+			{
+				if(offsets == null)
+				{
+					index = new int[count];
+					int pos = FILE_HEADER_SIZE;
+					for(int i = 0; i < count; i++)
+					{
+						index[i] = pos;
+						pos += HEADER_SIZE + buf.getInt(pos + 20) + buf.getInt(pos);
+					}
+					offsets = index;
+				}
+				return offsets;
+			}
+		}
+	}
+	
+	/**
+	 * Constructor for the journal, creates the folder if it does not exist.
+	 * @param dir The folder holding the segment files.
+	 * @param segmentSize The size of each segment file in bytes.
+	 * @param view Where errors writing the journal are reported.
+	 * @throws IOException If the folder can not be created.
+	 */
+	public ChatJournal(File dir, int segmentSize, ServerView view) throws IOException
+	{
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		this.view = view;
+		segmentStarts = new ArrayList<Long>();
+		recovered = new ArrayList<RecoveredSegment>();
+		crc = new CRC32();
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create journal folder " + dir);
+	}
+	
+	/**
+	 * Restores a chatroom from the journal. Must be called once, on an empty chatroom, before it is 
+	 * subscribed to. Scanning stops at the first record which is torn or fails its checksum, and 
+	 * everything after it is discarded so new messages are appended in its place.
+	 * @param chat The empty chatroom to restore the journaled messages to.
+	 * @return The number of messages recovered.
+	 * @throws IOException If a segment can not be mapped.
+	 */
+	public int recover(Chatroom chat) throws IOException
+	{
+		File files[] = dir.listFiles();
+		ArrayList<String> names = new ArrayList<String>();
+		if(files != null)
+			for(File f : files)
+				if(f.getName().endsWith(SUFFIX))
+					names.add(f.getName());
+		String sorted[] = names.toArray(new String[names.size()]);
+		Arrays.sort(sorted);
+		
+		int count = 0;
+		boolean corrupt = false;
+		for(String name : sorted)
+		{
+			File f = new File(dir, name);
+			long start = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+			if(!segmentStarts.isEmpty() && start != nextSeq)
+				corrupt = true; // A segment is missing, nothing after it can be trusted
+			MappedByteBuffer seg = corrupt ? null : map(f);
+			if(seg == null || seg.limit() < FILE_HEADER_SIZE || seg.getInt(0) != MAGIC)
+			{
+				corrupt = true;
+				f.delete();
+				continue;
+			}
+			if(segmentStarts.isEmpty())
+				nextSeq = start;
+			segmentStarts.add(start);
+			
+			int sealed = seg.getInt(4);
+			if(sealed > 0 && seg.getInt(8) == sealChecksum(start, sealed))
+			{
+				recovered.add(new RecoveredSegment(seg, count, sealed, null));
+				nextSeq += sealed;
+				count += sealed;
+				current = null;
+				continue;
+			}
+			
+			int offsets[] = new int[1024];
+			int found = 0;
+			int pos = FILE_HEADER_SIZE;
+			while(seg.limit() - pos >= HEADER_SIZE)
+			{
+				int length = seg.getInt(pos);
+				int senderLength = seg.getInt(pos + 20);
+				if(length < 0 || senderLength < 0 || (long) length + senderLength > seg.limit() - pos - HEADER_SIZE 
+						|| seg.getInt(pos + 8) != (int) nextSeq 
+						|| checksum(seg, pos + 8, HEADER_SIZE - 8 + senderLength + length) != seg.getInt(pos + 4))
+					break;
+				if(found == offsets.length)
+					offsets = Arrays.copyOf(offsets, found * 2);
+				offsets[found++] = pos;
+				pos += HEADER_SIZE + senderLength + length;
+				nextSeq++;
+			}
+			recovered.add(new RecoveredSegment(seg, count, found, Arrays.copyOf(offsets, found)));
+			count += found;
+			seg.position(pos);
+			current = seg;
+			currentCount = found;
+			if(seg.limit() - pos >= HEADER_SIZE && (seg.getInt(pos) != 0 || seg.getInt(pos + 4) != 0 || seg.getInt(pos + 8) != 0))
+			{
+				// A torn or corrupt record, new messages will be written over it
+				corrupt = true;
+				for(int i = 0; i < HEADER_SIZE; i++)
+					seg.put(pos + i, (byte) 0);
+			}
+		}
+		chat.restore(this, count);
+		journaledMsgs = count;
+		return count;
+	}
+	
+	/**
+	 * Finds where a recovered message's record starts in its mapped segment.
+	 * @param msgID The message's ID (index in the chat).
+	 * @return The segment, positioned at the record.
+	 */
+	private ByteBuffer record(int msgID)
+	{
+		int low = 0, high = recovered.size() - 1;
+		while(low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if(recovered.get(mid).firstID <= msgID)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		RecoveredSegment seg = recovered.get(low);
+		ByteBuffer record = seg.buf.duplicate();
+		record.position(seg.offsets()[msgID - seg.firstID]);
+		return record;
+	}
+	
+	/**
+	 * Gets the length of a recovered message's body from its record's header.
+	 * @param msgID The message's ID (index in the chat).
+	 * @return The number of bytes of the body as UTF-8.
+	 */
+	@Override
+	public int length(int msgID)
+	{
+		ByteBuffer record = record(msgID);
+		return record.getInt(record.position());
+	}
+	
+	/**
+	 * Copies a recovered message's body straight out of its mapped segment.
+	 * @param msgID The message's ID (index in the chat).
+	 * @param dst The buffer to copy the body into as UTF-8.
+	 */
+	@Override
+	public void copyTo(int msgID, ByteBuffer dst)
+	{
+		ByteBuffer record = record(msgID);
+		int body = record.position() + HEADER_SIZE + record.getInt(record.position() + 20);
+		record.limit(body + record.getInt(record.position()));
+		record.position(body);
+		dst.put(record);
+	}
+	
+	/**
+	 * Fetches the sender of a recovered message from its record.
+	 * @param msgID The message's ID (index in the chat).
+	 * @return A copy of the sender's name as UTF-8, or null if the message has no sender.
+	 */
+	@Override
+	public byte[] sender(int msgID)
+	{
+		ByteBuffer record = record(msgID);
+		int senderLength = record.getInt(record.position() + 20);
+		if(senderLength == 0)
+			return null;
+		byte sender[] = new byte[senderLength];
+		record.position(record.position() + HEADER_SIZE);
+		record.get(sender);
+		return sender;
+	}
+	
+	/**
+	 * Fetches the time a recovered message was added from its record's header.
+	 * @param msgID The message's ID (index in the chat).
+	 * @return The time in milliseconds since the epoch, or 0 if it is not known.
+	 */
+	@Override
+	public long time(int msgID)
+	{
+		ByteBuffer record = record(msgID);
+		return record.getLong(record.position() + 12);
+	}
+	
+	/**
+	 * Journals every message which has been added to the chatroom since the last call.
+	 * @param chat The chatroom the message was added to.
+	 */
+	@Override
+	public void messageAdded(Chatroom chat)
+	{
+		lock.lock();
+		try
+		{
+			while(journaledMsgs < chat.getSize())
+			{
+				journal(chat, journaledMsgs);
+				journaledMsgs++;
+			}
+			deleteEvicted(chat.getFirstID());
+		}
+		catch(IOException e)
+		{
+			view.error("IOException Occurred in the chat journal! " + e.getMessage());
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Writes one message's record to the current segment, copying its sender and body straight from 
+	 * the chatroom's log into the mapped segment. A message evicted before it could be journaled is 
+	 * written as a notice that the history was truncated.
+	 * @param chat The chatroom the message was added to.
+	 * @param msgID The message's ID.
+	 * @throws IOException If a new segment can not be created.
+	 */
+	private void journal(Chatroom chat, int msgID) throws IOException
+	{
+		int length = chat.getBodyLength(msgID);
+		if(length != -1)
+		{
+			byte sender[] = chat.getSender(msgID);
+			int senderLength = sender == null ? 0 : sender.length;
+			int pos = reserve(senderLength + length);
+			if(sender != null)
+				current.put(sender);
+			if(chat.copyBody(msgID, current))
+			{
+				finish(pos, chat.getTime(msgID), senderLength, length);
+				return;
+			}
+			// Evicted since its length was read
+			current.position(pos);
+		}
+		byte notice[] = Protocol.HISTORYTRUNCATED.getBytes(StandardCharsets.UTF_8);
+		int pos = reserve(notice.length);
+		current.put(notice);
+		finish(pos, 0, 0, notice.length);
+	}
+	
+	/**
+	 * Makes room for a record in the current segment. If it does not fit, the current segment is sealed 
+	 * and a new one is started.
+	 * @param payload The number of bytes of the sender and body.
+	 * @return The index the record starts at, the segment is positioned where the sender goes.
+	 * @throws IOException If a new segment can not be created.
+	 */
+	private int reserve(int payload) throws IOException
+	{
+		int size = HEADER_SIZE + payload;
+		if(current == null || current.remaining() < size)
+		{
+			if(current != null && currentCount > 0)
+			{
+				long start = nextSeq - currentCount;
+				current.putInt(8, sealChecksum(start, currentCount));
+				current.putInt(4, currentCount);
+				current.force();
+			}
+			File f = new File(dir, String.format("%020d", nextSeq) + SUFFIX);
+			current = map(f, Math.max(segmentSize, FILE_HEADER_SIZE + size));
+			current.putInt(0, MAGIC);
+			current.position(FILE_HEADER_SIZE);
+			currentCount = 0;
+			segmentStarts.add(nextSeq);
+		}
+		int pos = current.position();
+		current.position(pos + HEADER_SIZE);
+		return pos;
+	}
+	
+	/**
+	 * Completes a record once its sender and body have been copied in.
+	 * @param pos The index the record starts at.
+	 * @param time The time the message was added.
+	 * @param senderLength The number of bytes of the sender.
+	 * @param length The number of bytes of the body.
+	 */
+	private void finish(int pos, long time, int senderLength, int length)
+	{
+		// Write the checksum and length last, so a crash never leaves a valid header on a missing payload
+		current.putInt(pos + 8, (int) nextSeq);
+		current.putLong(pos + 12, time);
+		current.putInt(pos + 20, senderLength);
+		current.putInt(pos + 4, checksum(current, pos + 8, HEADER_SIZE - 8 + senderLength + length));
+		current.putInt(pos, length);
+		currentCount++;
+		nextSeq++;
+	}
+	
+	/**
+	 * Forces the segment being written to out to disk, so every message journaled so far survives the machine 
+	 * crashing or losing power, not only the server process.
+	 */
+	public void force()
+	{
+		lock.lock();
+		try
+		{
+			if(current != null)
+				current.force();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Deletes segments whose messages have all been evicted from the chatroom. The segment being 
+	 * written to is never deleted.
+	 * @param firstID The ID of the oldest message still in the chatroom.
+	 */
+	private void deleteEvicted(int firstID)
+	{
+		long firstSeq = nextSeq - journaledMsgs + firstID;
+		while(segmentStarts.size() > 1 && segmentStarts.get(1) <= firstSeq)
+		{
+			new File(dir, String.format("%020d", segmentStarts.get(0)) + SUFFIX).delete();
+			segmentStarts.remove(0);
+		}
+	}
+	
+	/**
+	 * The checksum of a record, covering its sequence number and payload. Computed on the mapped 
+	 * bytes directly so nothing has to be copied.
+	 * @param seg The segment holding the record.
+	 * @param from The index of the record's sequence number.
+	 * @param length The number of bytes covered.
+	 * @return The CRC32 checksum.
+	 */
+	private int checksum(MappedByteBuffer seg, int from, int length)
+	{
+		ByteBuffer region = seg.duplicate();
+		region.limit(from + length).position(from);
+		crc.reset();
+		crc.update(region);
+		return (int) crc.getValue();
+	}
+	
+	/**
+	 * The checksum stored with a sealed segment's record count.
+	 * @param start The sequence number of the segment's first record.
+	 * @param count The number of records in the segment.
+	 * @return The CRC32 checksum.
+	 */
+	private int sealChecksum(long start, int count)
+	{
+		ByteBuffer b = ByteBuffer.allocate(12);
+		b.putLong(start).putInt(count).flip();
+		crc.reset();
+		crc.update(b);
+		return (int) crc.getValue();
+	}
+	
+	/**
+	 * Maps an existing segment file.
+	 */
+	private MappedByteBuffer map(File f) throws IOException
+	{
+		return map(f, (int) Math.max(f.length(), FILE_HEADER_SIZE));
+	}
+	
+	/**
+	 * Maps a segment file, creating or growing it to the given size.
+	 */
+	private static MappedByteBuffer map(File f, int size) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		try
+		{
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		finally
+		{
+			// The mapping stays valid after the file is closed
+			raf.close();
+		}
+	}
+}
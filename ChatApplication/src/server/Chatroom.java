@@ -1,60 +1,208 @@
-package server;
-import java.util.ArrayList;
-
-/**
- * Stores an arraylist of chat messages, each with an ID (arraylist index) and 
- * a message (String).
- * @author Bailey Duncan
- * @since May 18, 2017
- * @version 1.0
- */
-public class Chatroom {
-	private ArrayList<String> chatroom;
-	
-	/**
-	 * Constructor for the chatroom arraylist.
-	 */
-	public Chatroom()
-	{
-		chatroom = new ArrayList<String>();
-	}
-	
-	/**
-	 * Gets the size of the arraylist.
-	 * @return The arraylist size.
-	 */
-	public int getSize()
-	{
-		return chatroom.size();
-	}
-	
-	/**
-	 * Fetches the message at index "msgID" from the arraylist.
-	 * @param msgID The index of message in the arraylist.
-	 * @return A String message.
-	 */
-	public String getMsg(int msgID)
-	{
-		return chatroom.get(msgID);
-	}
-	
-	/**
-	 * Overwrites the message at arraylist index 'msgID' with 'msg'.
-	 * @param msgID The messages index in the arraylist.
-	 * @param msg The new message which will replace the old one.
-	 */
-	public void setMsg(int msgID, String msg)
-	{
-		chatroom.set(msgID, msg);
-	}
-	
-	/**
-	 * Adds a message to the chat in a synchronized way to make the list more thread safe.
-	 * @param msg The message to be added.
-	 */
-	public synchronized void addMsg(String msg)
-	{
-		chatroom.add(msg);
-	}
-	
-}
+package server;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import chat_constants.BinaryProtocol;
+import chat_constants.Protocol;
+
+/**
+ * Stores a log of chat messages, each with an ID (sequence number in the log) and 
+ * a message (String), and tells its subscribed listeners when one is added. Evicted messages read as null.
+ * @author Bailey Duncan
+ * @since May 18, 2017
+ * @version 1.0
+ */
+public class Chatroom {
+	private String name;
+	private MessageLog chatroom;
+	private CopyOnWriteArrayList<ChatroomListener> listeners;
+	
+	/**
+	 * Constructor for a chatroom which keeps every message.
+	 */
+	public Chatroom()
+	{
+		this(0, 0);
+	}
+	
+	/**
+	 * Constructor for a chatroom which only keeps its most recent messages.
+	 * @param maxMessages The most messages kept, 0 for no limit.
+	 * @param maxBytes The most bytes of messages kept, 0 for no limit.
+	 */
+	public Chatroom(int maxMessages, long maxBytes)
+	{
+		this("", maxMessages, maxBytes);
+	}
+	
+	/**
+	 * Constructor for a named chatroom which only keeps its most recent messages.
+	 * @param name The chatroom's name.
+	 * @param maxMessages The most messages kept, 0 for no limit.
+	 * @param maxBytes The most bytes of messages kept, 0 for no limit.
+	 */
+	public Chatroom(String name, int maxMessages, long maxBytes)
+	{
+		this(name, maxMessages, maxBytes, false);
+	}
+	
+	/**
+	 * Constructor for a named chatroom which only keeps its most recent messages, optionally off the heap.
+	 * @param name The chatroom's name.
+	 * @param maxMessages The most messages kept, 0 for no limit.
+	 * @param maxBytes The most bytes of messages kept, 0 for no limit.
+	 * @param offHeap True to keep message bodies in direct memory rather than on the heap (see MessageArena).
+	 */
+	public Chatroom(String name, int maxMessages, long maxBytes, boolean offHeap)
+	{
+		this.name = name;
+		chatroom = new MessageLog(maxMessages, maxBytes, offHeap);
+		listeners = new CopyOnWriteArrayList<ChatroomListener>();
+	}
+	
+	/**
+	 * Gets the chatroom's name.
+	 * @return The name.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * Registers a listener which is notified every time a message is added to the chat.
+	 * @param l The listener (usually a connection in push mode).
+	 */
+	public void subscribe(ChatroomListener l)
+	{
+		listeners.addIfAbsent(l);
+	}
+	
+	/**
+	 * Removes a listener so it is no longer notified of new messages.
+	 * @param l The listener to remove.
+	 */
+	public void unsubscribe(ChatroomListener l)
+	{
+		listeners.remove(l);
+	}
+	
+	/**
+	 * Fills an empty chatroom with messages from an archive, without copying them into memory.
+	 * @param archive The archive holding the messages.
+	 * @param count The number of archived messages, which get IDs 0 to count - 1.
+	 */
+	public void restore(MessageArchive archive, int count)
+	{
+		chatroom.preload(archive, count);
+	}
+	
+	/**
+	 * Gets the number of messages in the log.
+	 * @return The log size.
+	 */
+	public int getSize()
+	{
+		return chatroom.size();
+	}
+	
+	/**
+	 * Gets the ID of the oldest message still in the log. Clients which have not read up to 
+	 * this ID have missed the messages before it.
+	 * @return The first message ID.
+	 */
+	public int getFirstID()
+	{
+		return chatroom.first();
+	}
+	
+	/**
+	 * Fetches the message with ID "msgID" from the log.
+	 * @param msgID The index of message in the log.
+	 * @return A String message, or null if it has been evicted.
+	 */
+	public String getMsg(int msgID)
+	{
+		return chatroom.get(msgID);
+	}
+	
+	/**
+	 * Gets the length of the body of the message with ID "msgID", which is the whole message if it has no sender.
+	 * @param msgID The index of message in the log.
+	 * @return The number of bytes of UTF-8, or -1 if it has been evicted.
+	 */
+	public int getBodyLength(int msgID)
+	{
+		return chatroom.bodyLength(msgID);
+	}
+	
+	/**
+	 * Copies the body of the message with ID "msgID" into a buffer, straight from where it is stored.
+	 * @param msgID The index of message in the log.
+	 * @param dst The buffer to copy into, which must have room for getBodyLength() bytes.
+	 * @return False if the message has been evicted since its length was read, and nothing was copied.
+	 */
+	public boolean copyBody(int msgID, ByteBuffer dst)
+	{
+		return chatroom.copyBody(msgID, dst);
+	}
+	
+	/**
+	 * Fetches the sender of the message with ID "msgID". Must only be called once getBodyLength() has returned its length.
+	 * @param msgID The index of message in the log.
+	 * @return The sender's name as UTF-8, which must not be modified, or null if the message has no sender.
+	 */
+	public byte[] getSender(int msgID)
+	{
+		return chatroom.sender(msgID);
+	}
+	
+	/**
+	 * Fetches the time the message with ID "msgID" was added. Must only be called once getBodyLength() has returned its length.
+	 * @param msgID The index of message in the log.
+	 * @return The time in milliseconds since the epoch, or 0 if it is not known.
+	 */
+	public long getTime(int msgID)
+	{
+		return chatroom.time(msgID);
+	}
+	
+	/**
+	 * Checks if a message can be added to the chat. Text protocol clients read the chat line by line, so a message 
+	 * must not hold a line break or a null character (which ends a catch-up), or be a line the server sends them 
+	 * as a command. Otherwise a message from one client could end another's catch-up early or disconnect it. 
+	 * A message, sender included, must also fit in a binary protocol frame, which text protocol lines do not have to.
+	 * @param msg The message to check.
+	 * @return True if the message is valid.
+	 */
+	public static boolean isValidMessage(String msg)
+	{
+		if(msg == null || msg.equals(Protocol.SERVERFULL) || msg.equals(Protocol.SERVERSHUTDOWN) || msg.startsWith(Protocol.ROOMCHANGED) 
+				|| msg.startsWith(Protocol.OLDERMESSAGES) || msg.startsWith(Protocol.HISTORYPAGE))
+			return false;
+		if(msg.length() * 3 > BinaryProtocol.MAX_PAYLOAD && msg.getBytes(StandardCharsets.UTF_8).length > BinaryProtocol.MAX_PAYLOAD)
+			return false;
+		for(int i = 0; i < msg.length(); i++)
+		{
+			char c = msg.charAt(i);
+			if(c == '\n' || c == '\r' || c == '\0')
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds a message to the chat without locking, then notifies every subscribed listener.
+	 * @param msg The message to be added.
+	 * @return The ID given to the message.
+	 */
+	public int addMsg(String msg)
+	{
+		int msgID = chatroom.append(msg);
+		for(ChatroomListener l : listeners)
+			l.messageAdded(this);
+		return msgID;
+	}
+	
+}
@@ -0,0 +1,18 @@
+package server;
+
+/**
+ * Receives a callback whenever a message is appended to a chatroom it is subscribed to.
+ * Used by connections in push mode so new messages are written to the client as soon
+ * as they are added, instead of waiting for the client to poll.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public interface ChatroomListener {
+	
+	/**
+	 * Called after a new message has been added to the chatroom.
+	 * @param chat The chatroom which the message was added to.
+	 */
+	public void messageAdded(Chatroom chat);
+}
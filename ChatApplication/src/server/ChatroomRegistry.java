@@ -0,0 +1,175 @@
+package server;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import chat_constants.BinaryProtocol;
+
+/**
+ * The named chatrooms hosted by a server. Every client starts in the lobby and can join other rooms, 
+ * which are created the first time someone joins them, or restored from the journal on startup.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class ChatroomRegistry {
+	private static final int MAX_NAME_LENGTH = 32;
+	
+	private ConcurrentHashMap<String, Chatroom> rooms;
+	private ConcurrentHashMap<String, ChatJournal> journals;
+	private Chatroom lobby;
+	private ServerConfig config;
+	private ServerView view;
+	private File journalDir;
+	private final ReentrantLock createLock = new ReentrantLock();
+	
+	/**
+	 * Constructor for the registry, creates (or restores) the lobby and restores any other journaled rooms.
+	 * @param config The server's settings.
+	 * @param view Where errors opening or writing journals are reported.
+	 */
+	public ChatroomRegistry(ServerConfig config, ServerView view)
+	{
+		this.config = config;
+		this.view = view;
+		rooms = new ConcurrentHashMap<String, Chatroom>();
+		journals = new ConcurrentHashMap<String, ChatJournal>();
+		if(config.getJournalDir() != null)
+			journalDir = new File(config.getJournalDir());
+		lobby = createRoom(config.getChatName(), journalDir);
+		rooms.put(lobby.getName(), lobby);
+		
+		File roomDirs[] = journalDir == null ? null : new File(journalDir, "rooms").listFiles();
+		if(roomDirs != null)
+			for(File f : roomDirs)
+				if(f.isDirectory() && isValidName(f.getName()))
+					getRoom(f.getName());
+	}
+	
+	/**
+	 * Gets the room every client starts in.
+	 * @return The lobby.
+	 */
+	public Chatroom getLobby()
+	{
+		return lobby;
+	}
+	
+	/**
+	 * Gets every room the server is hosting.
+	 * @return The rooms.
+	 */
+	public Collection<Chatroom> getRooms()
+	{
+		return rooms.values();
+	}
+	
+	/**
+	 * Gets the room with the given name, creating it if it does not exist yet.
+	 * @param name The room's name.
+	 * @return The room, or null if the name is invalid or the server can not host any more rooms.
+	 */
+	public Chatroom getRoom(String name)
+	{
+		Chatroom room = rooms.get(name);
+		if(room != null)
+			return room;
+		if(!isValidName(name))
+			return null;
+		createLock.lock();
+		try
+		{
+			room = rooms.get(name);
+			if(room == null && rooms.size() < config.getMaxRooms())
+			{
+				room = createRoom(name, journalDir == null ? null : new File(new File(journalDir, "rooms"), name));
+				if(room.getSize() == 0)
+					room.addMsg("Welcome to " + name);
+				rooms.put(name, room);
+			}
+			return room;
+		}
+		finally
+		{
+			createLock.unlock();
+		}
+	}
+	
+	/**
+	 * Forces every room's journal out to disk, when the server is stopped.
+	 */
+	public void forceJournals()
+	{
+		for(ChatJournal journal : journals.values())
+			journal.force();
+	}
+	
+	/**
+	 * Lists the names of every room, for clients asking which rooms they can join. The list is cut 
+	 * short if it would not fit in a binary protocol frame.
+	 * @return A line listing the rooms.
+	 */
+	public String describe()
+	{
+		StringBuilder list = new StringBuilder("Rooms:");
+		for(Chatroom room : rooms.values())
+		{
+			String name = room == lobby ? room.getName() + " (lobby)" : room.getName();
+			// At most three bytes a character once encoded
+			if((list.length() + name.length() + 5) * 3 > BinaryProtocol.MAX_PAYLOAD)
+			{
+				list.append(" ...");
+				break;
+			}
+			list.append(' ').append(name);
+		}
+		return list.toString();
+	}
+	
+	/**
+	 * Checks if a name can be used for a new room: 1 to 32 letters, digits, '-' or '_', so it is 
+	 * also a safe folder name.
+	 * @param name The name to check.
+	 * @return True if the name is valid.
+	 */
+	public static boolean isValidName(String name)
+	{
+		if(name == null || name.isEmpty() || name.length() > MAX_NAME_LENGTH)
+			return false;
+		for(int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if(!Character.isLetterOrDigit(c) && c != '-' && c != '_')
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates a room with the server's retention settings, restoring it from its journal if there is one.
+	 * @param name The room's name.
+	 * @param dir The room's journal folder, or null if it is not journaled.
+	 * @return The new room.
+	 */
+	private Chatroom createRoom(String name, File dir)
+	{
+		Chatroom room = new Chatroom(name, config.getMaxMessages(), config.getMaxHistoryBytes(), config.isOffHeapHistory());
+		if(dir != null)
+		{
+			try
+			{
+				ChatJournal journal = new ChatJournal(dir, config.getJournalSegmentSize(), view);
+				journal.recover(room);
+				room.subscribe(journal);
+				journals.put(name, journal);
+			}
+			catch(IOException e)
+			{
+				view.error("IOException Occurred opening the journal for " + name + "! " + e.getMessage());
+			}
+		}
+		return room;
+	}
+}
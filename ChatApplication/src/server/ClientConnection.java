@@ -0,0 +1,22 @@
+package server;
+
+/**
+ * A client's connection as the server sees it, whichever engine is handling it. Lets the server reach 
+ * every connected client directly, rather than through the chat.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public interface ClientConnection {
+	
+	/**
+	 * Tells the client the server has been stopped, then closes the connection once that has been sent. 
+	 * Returns straight away, and does nothing if it has already been called.
+	 */
+	public void shutdown();
+	
+	/**
+	 * Closes the connection straight away, without telling the client.
+	 */
+	public void forceClose();
+}
@@ -0,0 +1,85 @@
+package server;
+
+/**
+ * The bucket layout shared by the server's MetricHistogram and the load generator's LatencyHistogram. Values are
+ * put in buckets by their highest set bit, and each bucket is split into 2^subBits equal parts, so a percentile
+ * is off by at most 1/2^subBits whatever its size. Only the layout is shared, each histogram keeps its own counts.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public final class HistogramBuckets {
+	private final int subBits;
+	private final int subBuckets;
+	
+	/**
+	 * Constructor for the layout.
+	 * @param subBits The number of bits each power of two is split by, more is more precise but needs more buckets.
+	 */
+	public HistogramBuckets(int subBits)
+	{
+		this.subBits = subBits;
+		subBuckets = 1 << subBits;
+	}
+	
+	/**
+	 * Gets the number of buckets needed to hold any non-negative long.
+	 * @return The number of buckets.
+	 */
+	public int size()
+	{
+		return (64 - subBits + 1) * subBuckets;
+	}
+	
+	/**
+	 * Finds the bucket a value belongs to. Values below 2^subBits get a bucket each, larger ones
+	 * share a bucket with the values that have the same top subBits + 1 bits.
+	 * @param value The value, must not be negative.
+	 * @return The bucket's index.
+	 */
+	public int index(long value)
+	{
+		int magnitude = 64 - Long.numberOfLeadingZeros(value) - subBits;
+		if(magnitude <= 0)
+			return (int) value;
+		return magnitude * subBuckets + (int) ((value >>> (magnitude - 1)) - subBuckets);
+	}
+	
+	/**
+	 * Gets the highest value that falls in a bucket.
+	 * @param index The bucket's index.
+	 * @return The value.
+	 */
+	public long highestValue(int index)
+	{
+		int magnitude = index / subBuckets;
+		if(magnitude == 0)
+			return index;
+		long lowest = (long) (index % subBuckets + subBuckets) << (magnitude - 1);
+		return lowest + (1L << (magnitude - 1)) - 1;
+	}
+	
+	/**
+	 * Gets the value below which a given fraction of the counted values fall. The answer is the highest
+	 * value of the bucket the percentile falls in (or the largest value, if that is lower), so it never understates it.
+	 * @param counts The number of values in each bucket.
+	 * @param total The sum of the counts.
+	 * @param max The largest value counted.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The value, 0 if nothing was counted.
+	 */
+	public long percentile(long counts[], long total, long max, double percentile)
+	{
+		if(total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if(seen >= rank)
+				return Math.min(highestValue(i), max);
+		}
+		return max;
+	}
+}
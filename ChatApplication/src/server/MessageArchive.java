@@ -0,0 +1,41 @@
+package server;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only storage for the oldest messages of a chat, which a MessageLog reads from instead of 
+ * keeping those messages in memory. Used to serve a chat's history straight from its journal after a restart.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public interface MessageArchive {
+	
+	/**
+	 * Gets the length of an archived message's body. Must be safe to call from any number of threads at once, 
+	 * as must every method of an archive.
+	 * @param msgID The message's ID (index in the log).
+	 * @return The number of bytes of the body as UTF-8, the whole message for one without a sender.
+	 */
+	public int length(int msgID);
+	
+	/**
+	 * Copies an archived message's body into a buffer.
+	 * @param msgID The message's ID (index in the log).
+	 * @param dst The buffer to copy the body into as UTF-8, at its position, which must have room for length() bytes.
+	 */
+	public void copyTo(int msgID, ByteBuffer dst);
+	
+	/**
+	 * Fetches the sender of an archived message.
+	 * @param msgID The message's ID (index in the log).
+	 * @return The sender's name as UTF-8, or null if the message has no sender.
+	 */
+	public byte[] sender(int msgID);
+	
+	/**
+	 * Fetches the time an archived message was first added to the chat.
+	 * @param msgID The message's ID (index in the log).
+	 * @return The time in milliseconds since the epoch, or 0 if it is not known.
+	 */
+	public long time(int msgID);
+}
@@ -0,0 +1,193 @@
+package server;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the bodies of one MessageLog segment's messages outside the Java heap, in direct ByteBuffer chunks. 
+ * Bytes are never moved or overwritten, and the whole arena is freed with its segment.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class MessageArena {
+	/** The size of the first chunk. */
+	public static final int FIRST_CHUNK = 16 * 1024;
+	/** The size chunks double up to. */
+	public static final int MAX_CHUNK = 1024 * 1024;
+	private static final int OVERSIZED = -1;
+
+	// Each slot's length plus one, 0 while it is empty or once it has been cleared
+	private final AtomicIntegerArray sizes;
+	// Each slot's chunk in the high 32 bits and offset in the low 32 bits
+	private final long locations[];
+	private final AtomicReferenceArray<ByteBuffer> chunks;
+	// The chunk being filled in the high 32 bits and the next free offset in it in the low 32 bits
+	private final AtomicLong cursor = new AtomicLong();
+	private volatile AtomicReferenceArray<ByteBuffer> oversized;
+
+	/**
+	 * Constructor for an empty arena. No memory is allocated until the first message is stored.
+	 * @param slots The number of messages the arena holds.
+	 */
+	public MessageArena(int slots)
+	{
+		sizes = new AtomicIntegerArray(slots);
+		locations = new long[slots];
+		// Every chunk past the small ones skipped to fit a large body holds at least one message
+		chunks = new AtomicReferenceArray<ByteBuffer>(slots + 7);
+	}
+
+	/**
+	 * Gets the size of a chunk.
+	 * @param index The chunk's number.
+	 * @return The size in bytes.
+	 */
+	private static int chunkSize(int index)
+	{
+		return index >= 6 ? MAX_CHUNK : FIRST_CHUNK << index;
+	}
+
+	/**
+	 * Stores a message's body. Each slot must only be stored once, by the writer which claimed it.
+	 * @param slot The message's slot.
+	 * @param body The body as UTF-8.
+	 */
+	public void put(int slot, byte body[])
+	{
+		if(body.length > MAX_CHUNK)
+		{
+			ByteBuffer own = ByteBuffer.allocateDirect(body.length);
+			own.put(body);
+			oversized().set(slot, own);
+			locations[slot] = OVERSIZED;
+		}
+		else
+		{
+			long location = allocate(body.length);
+			ByteBuffer chunk = chunk((int) (location >>> 32)).duplicate();
+			chunk.position((int) location);
+			chunk.put(body);
+			locations[slot] = location;
+		}
+		// Written last, so a reader which sees the length also sees the location and the bytes
+		sizes.set(slot, body.length + 1);
+	}
+
+	/**
+	 * Claims space for a body in the chunk being filled, moving on to the next chunk big enough if it does not fit.
+	 * @param length The number of bytes.
+	 * @return The chunk in the high 32 bits and the offset in the low 32 bits.
+	 */
+	private long allocate(int length)
+	{
+		while(true)
+		{
+			long c = cursor.get();
+			int index = (int) (c >>> 32);
+			int offset = (int) c;
+			if(offset + length <= chunkSize(index))
+			{
+				if(cursor.compareAndSet(c, c + length))
+					return c;
+				continue;
+			}
+			int next = index + 1;
+			while(chunkSize(next) < length)
+				next++;
+			long start = (long) next << 32;
+			if(cursor.compareAndSet(c, start + length))
+				return start;
+		}
+	}
+
+	/**
+	 * Gets a chunk, allocating it if it is the first time anyone has. Whoever loses the race to install it uses the winner's.
+	 * @param index The chunk's number.
+	 * @return The chunk.
+	 */
+	private ByteBuffer chunk(int index)
+	{
+		ByteBuffer chunk = chunks.get(index);
+		if(chunk != null)
+			return chunk;
+		chunks.compareAndSet(index, null, ByteBuffer.allocateDirect(chunkSize(index)));
+		return chunks.get(index);
+	}
+
+	/**
+	 * Gets the table of bodies too large for a chunk, creating it the first time one is stored.
+	 * @return The table.
+	 */
+	private AtomicReferenceArray<ByteBuffer> oversized()
+	{
+		AtomicReferenceArray<ByteBuffer> table = oversized;
+		if(table == null)
+		{
+			synchronized(this)
+			{
+				if(oversized == null)
+					oversized = new AtomicReferenceArray<ByteBuffer>(locations.length);
+				table = oversized;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Gets the length of a slot's body.
+	 * @param slot The message's slot.
+	 * @return The number of bytes, or -1 if the slot is empty or has been cleared.
+	 */
+	public int length(int slot)
+	{
+		return sizes.get(slot) - 1;
+	}
+
+	/**
+	 * Copies a slot's body into a buffer, straight from the chunk holding it.
+	 * @param slot The message's slot.
+	 * @param dst The buffer to copy into, at its position, which must have room for the whole body.
+	 * @return False if the slot is empty or has been cleared, and nothing was copied.
+	 */
+	public boolean copyTo(int slot, ByteBuffer dst)
+	{
+		int length = sizes.get(slot) - 1;
+		if(length == -1)
+			return false;
+		long location = locations[slot];
+		ByteBuffer src;
+		if(location == OVERSIZED)
+		{
+			ByteBuffer own = oversized.get(slot);
+			// Cleared since its length was read
+			if(own == null)
+				return false;
+			src = own.duplicate();
+			src.clear();
+		}
+		else
+		{
+			src = chunks.get((int) (location >>> 32)).duplicate();
+			src.position((int) location);
+		}
+		src.limit(src.position() + length);
+		dst.put(src);
+		return true;
+	}
+
+	/**
+	 * Clears a slot, once its message has been evicted. The bytes stay where they are until the arena is dropped,
+	 * except for an oversized body, which is let go straight away.
+	 * @param slot The message's slot.
+	 * @return The length of the body that was there, or -1 if the slot was already empty.
+	 */
+	public int clear(int slot)
+	{
+		int length = sizes.getAndSet(slot, 0) - 1;
+		if(length != -1 && locations[slot] == OVERSIZED)
+			oversized.set(slot, null);
+		return length;
+	}
+}
@@ -0,0 +1,379 @@
+package server;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free, append-only log of chat messages, each identified by its sequence number (index). 
+ * Messages are stored as a sender, a time and a UTF-8 body in fixed size segments, with the bodies on or off the heap. 
+ * The log can be capped by message count and/or size, and the oldest messages are then evicted and read as null.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class MessageLog {
+	private static final int SEGMENT_BITS = 10;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+	
+	private AtomicInteger claimed;
+	private AtomicInteger published;
+	private AtomicInteger head;
+	private AtomicLong retainedBytes;
+	private AtomicReference<Directory> directory;
+	private int maxMessages;
+	private long maxBytes;
+	private MessageArchive archive;
+	private int archived;
+	private SenderTable senders;
+	private boolean offHeap;
+	
+	/**
+	 * A block of message slots, with the bodies either in an array or in an off-heap arena. A slot's sender and 
+	 * time are written before its body, which is written once (apart from being cleared) with volatile semantics, 
+	 * so whoever reads the body's length can read the rest.
+	 */
+	private static final class Segment {
+		final AtomicReferenceArray<byte[]> slots;
+		final MessageArena arena;
+		final int senders[] = new int[SEGMENT_SIZE];
+		final long times[] = new long[SEGMENT_SIZE];
+		
+		Segment(boolean offHeap)
+		{
+			slots = offHeap ? null : new AtomicReferenceArray<byte[]>(SEGMENT_SIZE);
+			arena = offHeap ? new MessageArena(SEGMENT_SIZE) : null;
+		}
+		
+		void put(int slot, byte body[])
+		{
+			if(arena != null)
+				arena.put(slot, body);
+			else
+				slots.set(slot, body);
+		}
+		
+		int length(int slot)
+		{
+			if(arena != null)
+				return arena.length(slot);
+			byte body[] = slots.get(slot);
+			return body == null ? -1 : body.length;
+		}
+		
+		boolean copyTo(int slot, ByteBuffer dst)
+		{
+			if(arena != null)
+				return arena.copyTo(slot, dst);
+			byte body[] = slots.get(slot);
+			if(body == null)
+				return false;
+			dst.put(body);
+			return true;
+		}
+		
+		int clear(int slot)
+		{
+			if(arena != null)
+				return arena.clear(slot);
+			byte body[] = slots.getAndSet(slot, null);
+			return body == null ? -1 : body.length;
+		}
+	}
+	
+	/**
+	 * An immutable table of the live segments, the first one holding segment number "base".
+	 */
+	private static final class Directory {
+		final int base;
+		final Segment[] segments;
+		
+		Directory(int base, Segment[] segments)
+		{
+			this.base = base;
+			this.segments = segments;
+		}
+		
+		Segment get(int index)
+		{
+			index -= base;
+			if(index < 0 || index >= segments.length)
+				return null;
+			return segments[index];
+		}
+	}
+	
+	/**
+	 * Constructor for a message log that keeps every message.
+	 */
+	public MessageLog()
+	{
+		this(0, 0, false);
+	}
+	
+	/**
+	 * Constructor for a message log with a retention limit, which keeps message bodies on the heap.
+	 * @param maxMessages The most messages kept, 0 for no limit.
+	 * @param maxBytes The most bytes of message bodies kept (as UTF-8), 0 for no limit.
+	 */
+	public MessageLog(int maxMessages, long maxBytes)
+	{
+		this(maxMessages, maxBytes, false);
+	}
+	
+	/**
+	 * Constructor for a message log with a retention limit, and a choice of where message bodies are kept.
+	 * @param maxMessages The most messages kept, 0 for no limit.
+	 * @param maxBytes The most bytes of message bodies kept (as UTF-8), 0 for no limit.
+	 * @param offHeap True to keep message bodies in off-heap arenas rather than on the heap.
+	 */
+	public MessageLog(int maxMessages, long maxBytes, boolean offHeap)
+	{
+		this.maxMessages = maxMessages;
+		this.maxBytes = maxBytes;
+		this.offHeap = offHeap;
+		claimed = new AtomicInteger();
+		published = new AtomicInteger();
+		head = new AtomicInteger();
+		retainedBytes = new AtomicLong();
+		senders = new SenderTable();
+		directory = new AtomicReference<Directory>(new Directory(0, new Segment[] { new Segment(offHeap) }));
+	}
+	
+	/**
+	 * Starts an empty log with messages held in an archive. The archived messages get IDs 0 to count - 1 
+	 * and anything appended afterwards follows them. Messages over the count limit are evicted straight away.
+	 * @param archive The archive holding the messages.
+	 * @param count The number of archived messages.
+	 * @throws IllegalStateException If the log is not empty.
+	 */
+	public void preload(MessageArchive archive, int count)
+	{
+		if(claimed.get() != 0)
+			throw new IllegalStateException("Only an empty log can be preloaded");
+		this.archive = archive;
+		this.archived = count;
+		directory.set(new Directory(count >>> SEGMENT_BITS, new Segment[] { new Segment(offHeap) }));
+		head.set(maxMessages > 0 ? Math.max(0, count - maxMessages) : 0);
+		claimed.set(count);
+		published.set(count);
+	}
+	
+	/**
+	 * Gets the number of published messages. Every message from first() up to this number can be read.
+	 * @return The published tail of the log.
+	 */
+	public int size()
+	{
+		return published.get();
+	}
+	
+	/**
+	 * Gets the sequence number of the oldest message that has not been evicted.
+	 * @return The head of the log.
+	 */
+	public int first()
+	{
+		return head.get();
+	}
+	
+	/**
+	 * Fetches a published message, putting its sender back in front of its body.
+	 * @param seq The sequence number of the message.
+	 * @return A String message, or null if it has been evicted.
+	 * @throws IndexOutOfBoundsException If the message has not been published.
+	 */
+	public String get(int seq)
+	{
+		int length = bodyLength(seq);
+		if(length == -1)
+			return null;
+		byte sender[] = sender(seq);
+		int start = sender == null ? 0 : sender.length + 2;
+		ByteBuffer msg = ByteBuffer.allocate(start + length);
+		if(sender != null)
+			msg.put(sender).put((byte) ':').put((byte) ' ');
+		// Evicted in between, the length having been read
+		if(!copyBody(seq, msg))
+			return null;
+		return new String(msg.array(), 0, msg.position(), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Gets the length of the body of a published message, the whole message for one without a sender.
+	 * @param seq The sequence number of the message.
+	 * @return The number of bytes of UTF-8, or -1 if it has been evicted.
+	 * @throws IndexOutOfBoundsException If the message has not been published.
+	 */
+	public int bodyLength(int seq)
+	{
+		if(seq < 0 || seq >= published.get())
+			throw new IndexOutOfBoundsException("Message: " + seq + ", Size: " + published.get());
+		if(seq < archived)
+			return seq < head.get() ? -1 : archive.length(seq);
+		Segment s = directory.get().get(seq >>> SEGMENT_BITS);
+		return s == null ? -1 : s.length(seq & SEGMENT_MASK);
+	}
+	
+	/**
+	 * Copies the body of a published message into a buffer, straight from wherever it is stored. The message may 
+	 * be evicted after bodyLength() was called, so the caller has to be ready for nothing to be copied.
+	 * @param seq The sequence number of the message.
+	 * @param dst The buffer to copy into, at its position, which must have room for bodyLength() bytes.
+	 * @return False if the message has been evicted.
+	 */
+	public boolean copyBody(int seq, ByteBuffer dst)
+	{
+		if(seq < archived)
+		{
+			if(seq < head.get())
+				return false;
+			archive.copyTo(seq, dst);
+			return true;
+		}
+		Segment s = directory.get().get(seq >>> SEGMENT_BITS);
+		return s != null && s.copyTo(seq & SEGMENT_MASK, dst);
+	}
+	
+	/**
+	 * Fetches the sender of a published message. Must only be called once bodyLength() has returned the length of 
+	 * the message's body, which makes the sender visible to this thread.
+	 * @param seq The sequence number of the message.
+	 * @return The sender's name as UTF-8, which must not be modified, or null if the message has no sender.
+	 */
+	public byte[] sender(int seq)
+	{
+		if(seq < archived)
+			return archive.sender(seq);
+		Segment s = directory.get().get(seq >>> SEGMENT_BITS);
+		int id = s == null ? -1 : s.senders[seq & SEGMENT_MASK];
+		return id == -1 ? null : senders.getName(id);
+	}
+	
+	/**
+	 * Fetches the time a published message was appended. Must only be called once bodyLength() has returned the 
+	 * length of the message's body.
+	 * @param seq The sequence number of the message.
+	 * @return The time in milliseconds since the epoch, or 0 if it is not known.
+	 */
+	public long time(int seq)
+	{
+		if(seq < archived)
+			return archive.time(seq);
+		Segment s = directory.get().get(seq >>> SEGMENT_BITS);
+		return s == null ? 0 : s.times[seq & SEGMENT_MASK];
+	}
+	
+	/**
+	 * Appends a message to the end of the log, evicting the oldest messages if the log is over its limit. 
+	 * Safe to call from any number of threads at once.
+	 * @param msg The message to append, must not be null.
+	 * @return The sequence number given to the message.
+	 */
+	public int append(String msg)
+	{
+		int sender = -1;
+		int split = msg.indexOf(": ");
+		if(split > 0 && split <= SenderTable.MAX_NAME_LENGTH)
+			sender = senders.intern(msg.substring(0, split));
+		byte body[] = (sender == -1 ? msg : msg.substring(split + 2)).getBytes(StandardCharsets.UTF_8);
+		int seq = claimed.getAndIncrement();
+		retainedBytes.addAndGet(body.length);
+		Segment s = segment(seq >>> SEGMENT_BITS);
+		int slot = seq & SEGMENT_MASK;
+		s.senders[slot] = sender;
+		s.times[slot] = System.currentTimeMillis();
+		s.put(slot, body);
+		publish();
+		evict();
+		return seq;
+	}
+	
+	/**
+	 * Advances the published tail over every slot which has been filled. A writer that has claimed 
+	 * a slot but not filled it yet stops the tail, and publishes itself (and anything after it) once it has.
+	 */
+	private void publish()
+	{
+		int tail = published.get();
+		while(tail < claimed.get())
+		{
+			Segment s = directory.get().get(tail >>> SEGMENT_BITS);
+			if(s == null || s.length(tail & SEGMENT_MASK) == -1)
+				return;
+			published.compareAndSet(tail, tail + 1);
+			tail = published.get();
+		}
+	}
+	
+	/**
+	 * Moves the head forward while the log is over its limits, clearing each evicted slot and 
+	 * dropping segments once the head has left them. The newest message is never evicted.
+	 */
+	private void evict()
+	{
+		if(maxMessages <= 0 && maxBytes <= 0)
+			return;
+		while(true)
+		{
+			int first = head.get();
+			int count = published.get() - first;
+			boolean overCount = maxMessages > 0 && count > maxMessages;
+			boolean overBytes = maxBytes > 0 && retainedBytes.get() > maxBytes && count > 1;
+			if(!overCount && !overBytes)
+				return;
+			if(!head.compareAndSet(first, first + 1))
+				continue;
+			// The segment can only be gone if other writers evicted past it in the meantime
+			Segment s = directory.get().get(first >>> SEGMENT_BITS);
+			int old = s == null ? -1 : s.clear(first & SEGMENT_MASK);
+			if(old != -1)
+				retainedBytes.addAndGet(-old);
+			if(((first + 1) & SEGMENT_MASK) == 0)
+				dropSegments((first + 1) >>> SEGMENT_BITS);
+		}
+	}
+	
+	/**
+	 * Removes every segment before the given one from the directory.
+	 * @param index The first segment number to keep.
+	 */
+	private void dropSegments(int index)
+	{
+		while(true)
+		{
+			Directory dir = directory.get();
+			if(index <= dir.base)
+				return;
+			Segment[] kept = Arrays.copyOfRange(dir.segments, Math.min(index - dir.base, dir.segments.length), dir.segments.length);
+			if(directory.compareAndSet(dir, new Directory(index, kept)))
+				return;
+		}
+	}
+	
+	/**
+	 * Gets the segment with the given index, adding it to the directory if it does not exist yet. 
+	 * A directory is never modified once installed, a copy with the new segment replaces it with a CAS.
+	 * @param index The segment number.
+	 * @return The segment.
+	 */
+	private Segment segment(int index)
+	{
+		while(true)
+		{
+			Directory dir = directory.get();
+			Segment s = dir.get(index);
+			if(s != null)
+				return s;
+			int offset = index - dir.base;
+			Segment[] copy = Arrays.copyOf(dir.segments, offset < dir.segments.length ? dir.segments.length : Math.max(dir.segments.length * 2, offset + 1));
+			copy[offset] = new Segment(offHeap);
+			if(directory.compareAndSet(dir, new Directory(dir.base, copy)))
+				return copy[offset];
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package server;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A histogram any number of threads can record into at once without locking, cheap enough to leave on. 
+ * Percentiles are over everything recorded since the histogram was created or last reset.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class MetricHistogram {
+	private static final HistogramBuckets BUCKETS = new HistogramBuckets(3);
+	
+	private final LongAdder counts[];
+	private final LongAdder total;
+	private final LongAdder sum;
+	private final LongAccumulator max;
+	
+	/**
+	 * Constructor for an empty histogram which can hold any non-negative long.
+	 */
+	public MetricHistogram()
+	{
+		counts = new LongAdder[BUCKETS.size()];
+		for(int i = 0; i < counts.length; i++)
+			counts[i] = new LongAdder();
+		total = new LongAdder();
+		sum = new LongAdder();
+		max = new LongAccumulator(new LongBinaryOperator()
+		{
+			@Override
+			public long applyAsLong(long left, long right) {
+				return Math.max(left, right);
+			}
+		}, 0);
+	}
+	
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * @param value The value.
+	 */
+	public void record(long value)
+	{
+		if(value < 0)
+			value = 0;
+		counts[BUCKETS.index(value)].increment();
+		total.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+	
+	/**
+	 * Forgets everything recorded so far. Values recorded while resetting may or may not be kept.
+	 */
+	public void reset()
+	{
+		for(LongAdder count : counts)
+			count.reset();
+		total.reset();
+		sum.reset();
+		max.reset();
+	}
+	
+	/**
+	 * Gets the number of values recorded.
+	 * @return The count.
+	 */
+	public long getCount()
+	{
+		return total.sum();
+	}
+	
+	/**
+	 * Gets the mean of the values recorded.
+	 * @return The mean, 0 if none was recorded.
+	 */
+	public double getMean()
+	{
+		long n = total.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+	
+	/**
+	 * Gets the largest value recorded.
+	 * @return The largest value, 0 if none was recorded.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	/**
+	 * Gets the value below which a given fraction of the recorded values fall. The answer is the highest 
+	 * value of the bucket the percentile falls in, so it never understates it.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The value, 0 if none was recorded.
+	 */
+	public long getPercentile(double percentile)
+	{
+		long snapshot[] = new long[counts.length];
+		long n = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			snapshot[i] = counts[i].sum();
+			n += snapshot[i];
+		}
+		return BUCKETS.percentile(snapshot, n, getMax(), percentile);
+	}
+}
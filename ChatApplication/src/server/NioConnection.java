@@ -0,0 +1,647 @@
+package server;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import chat_constants.BinaryProtocol;
+import chat_constants.Protocol;
+
+/**
+ * The NIO engine's equivalent of a ServerThread, speaking the same protocols without ever blocking. 
+ * All methods except messageAdded() must only be called on the connection's event loop thread.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class NioConnection implements ChatroomListener, ClientConnection {
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+	
+	private SocketChannel channel;
+	private SelectionKey key;
+	private NioEventLoop loop;
+	private volatile Chatroom chat;
+	private Server server;
+	private ByteBuffer readBuf;
+	private CatchUpEncoder encoder;
+	private OutboundQueue queue;
+	private ServerMetrics metrics;
+	private byte line[];
+	private int lineLength;
+	private int threadID, version, waitingPlace;
+	private long bytesIn, bytesOut, pushStart;
+	private boolean push, turnedAway, sentFull, closed, stopping, closing, updatePending, processing, negotiated, binary;
+	private AtomicBoolean updateScheduled;
+	
+	/**
+	 * Constructor for the NIO connection.
+	 * @param ch The client's channel.
+	 * @param loop The event loop which owns this connection.
+	 * @param chatroom The chatroom the client is joining.
+	 * @param server The back-end server class.
+	 * @param ID The thread ID reserved for this client, or -1 if the server was full and the client has to 
+	 * wait for a place (or be turned away).
+	 */
+	public NioConnection(SocketChannel ch, NioEventLoop loop, Chatroom chatroom, Server server, int ID)
+	{
+		this.channel = ch;
+		this.loop = loop;
+		this.chat = chatroom;
+		this.server = server;
+		this.threadID = ID;
+		readBuf = ByteBuffer.allocate(4096);
+		encoder = new CatchUpEncoder();
+		metrics = server.getMetrics();
+		queue = server.newOutboundQueue();
+		line = new byte[256];
+		updateScheduled = new AtomicBoolean();
+	}
+	
+	/**
+	 * Sets the selection key this connection was registered with.
+	 * @param key The selection key.
+	 */
+	public void setKey(SelectionKey key)
+	{
+		this.key = key;
+	}
+	
+	/**
+	 * Turns the client away because the server and its waiting room are full.
+	 */
+	public void turnAway()
+	{
+		turnedAway = true;
+	}
+	
+	/**
+	 * Checks if the client is waiting for a place on the server.
+	 * @return True if the client has not been let in or turned away.
+	 */
+	private boolean isWaiting()
+	{
+		return threadID == -1 && !turnedAway;
+	}
+	
+	/**
+	 * Tells a waiting client its place in the waiting room, once its protocol is known.
+	 * @param place The client's place in the queue, 1 being the next to be let in.
+	 */
+	public void setWaitingPlace(final int place)
+	{
+		loop.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				if(closed || stopping || !isWaiting())
+					return;
+				waitingPlace = place;
+				if(!negotiated)
+					return;
+				encoder.encodeNotice(Protocol.WAITINGROOM + place);
+				try
+				{
+					write();
+				}
+				catch(IOException e)
+				{
+					close();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Lets a waiting client in, then handles whatever it sent while it was waiting.
+	 * @param slot The thread ID reserved for the client.
+	 */
+	public void admit(final int slot)
+	{
+		loop.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				if(closed)
+				{
+					// The client left just before it was let in
+					server.endConnection(slot);
+					return;
+				}
+				threadID = slot;
+				if(stopping)
+					return; // Closed, freeing the slot, once the shutdown notice has been sent
+				try
+				{
+					server.connected(slot, NioConnection.this);
+					processInput();
+				}
+				catch(IOException e)
+				{
+					close();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Reads whatever the client has sent and handles every complete request. A waiting client which 
+	 * sends more than the read buffer holds is disconnected.
+	 * @throws IOException If the channel can not be read.
+	 */
+	public void read() throws IOException
+	{
+		int n = channel.read(readBuf);
+		if(n == -1)
+		{
+			close();
+			return;
+		}
+		bytesIn += n;
+		metrics.bytesIn(n);
+		processInput();
+		if(isWaiting() && !readBuf.hasRemaining())
+			close();
+	}
+	
+	/**
+	 * Handles every complete request in the read buffer, stopping early if a reply is still being sent. 
+	 * Replies can call back into this method once they finish, which is ignored if it is already running.
+	 * @throws IOException If a reply can not be written.
+	 */
+	private void processInput() throws IOException
+	{
+		if(processing)
+			return;
+		processing = true;
+		try
+		{
+			readBuf.flip();
+			while(!closed && !stopping && !closing && !updatePending)
+			{
+				if(!negotiated)
+				{
+					if(!negotiate())
+						break;
+				}
+				else if(isWaiting())
+					break;
+				else if(binary)
+				{
+					if(!nextFrame())
+						break;
+				}
+				else if(!nextLine())
+					break;
+			}
+			readBuf.compact();
+		}
+		finally
+		{
+			processing = false;
+		}
+	}
+	
+	/**
+	 * Decides which protocol to use from the first bytes the client sends, answering a binary protocol hello.
+	 * @return True if the protocol has been decided, false if more bytes are needed or the hello was invalid.
+	 * @throws IOException If the reply can not be written.
+	 */
+	private boolean negotiate() throws IOException
+	{
+		int p = readBuf.position();
+		if(!readBuf.hasRemaining())
+			return false;
+		if(readBuf.get(p) != BinaryProtocol.MAGIC[0])
+		{
+			negotiated = true;
+			startHistory();
+			if(isWaiting() && waitingPlace > 0)
+			{
+				encoder.encodeNotice(Protocol.WAITINGROOM + waitingPlace);
+				write();
+			}
+			return true;
+		}
+		if(readBuf.remaining() < BinaryProtocol.HELLO_SIZE)
+			return false;
+		try
+		{
+			for(int i = 1; i < BinaryProtocol.MAGIC.length; i++)
+				if(readBuf.get(p + i) != BinaryProtocol.MAGIC[i])
+					throw new IOException("Invalid protocol hello");
+			version = BinaryProtocol.negotiate(readBuf.get(p + BinaryProtocol.MAGIC.length) & 0xFF);
+		}
+		catch(IOException e)
+		{
+			close();
+			return false;
+		}
+		readBuf.position(p + BinaryProtocol.HELLO_SIZE);
+		negotiated = true;
+		binary = true;
+		encoder.setBinary(true);
+		encoder.setCompressed(version >= BinaryProtocol.COMPRESSION_VERSION);
+		startHistory();
+		encoder.encodeHello(version);
+		if(turnedAway)
+		{
+			// The server is full, a binary client closes the connection as soon as it reads this
+			sentFull = true;
+			encoder.encodeServerFull();
+		}
+		else if(isWaiting() && waitingPlace > 0)
+			encoder.encodeNotice(Protocol.WAITINGROOM + waitingPlace);
+		write();
+		return true;
+	}
+	
+	/**
+	 * Starts the client at the most recent messages of the room it is in, once the protocol it uses is known.
+	 */
+	private void startHistory()
+	{
+		encoder.setHistory(server.getJoinHistory());
+		encoder.setPaging(version >= BinaryProtocol.HISTORY_VERSION);
+		encoder.reset(chat);
+	}
+	
+	/**
+	 * Handles the next frame in the read buffer, growing the buffer if the frame can not fit in it.
+	 * @return True if a frame was handled, false if more bytes are needed or the frame was invalid.
+	 * @throws IOException If the reply can not be written.
+	 */
+	private boolean nextFrame() throws IOException
+	{
+		if(readBuf.remaining() < BinaryProtocol.HEADER_SIZE)
+			return false;
+		int p = readBuf.position();
+		byte opcode = readBuf.get(p);
+		int length = readBuf.getInt(p + 1);
+		if(length < 0 || length > BinaryProtocol.MAX_PAYLOAD)
+		{
+			close();
+			return false;
+		}
+		int size = BinaryProtocol.HEADER_SIZE + length;
+		if(readBuf.remaining() < size)
+		{
+			if(readBuf.capacity() < size)
+			{
+				ByteBuffer bigger = ByteBuffer.allocate(size);
+				bigger.put(readBuf);
+				bigger.flip();
+				readBuf = bigger;
+			}
+			return false;
+		}
+		String text = null;
+		if(opcode == BinaryProtocol.MESSAGE || opcode == BinaryProtocol.JOIN || opcode == BinaryProtocol.HISTORY)
+			text = new String(readBuf.array(), readBuf.arrayOffset() + p + BinaryProtocol.HEADER_SIZE, length, CHARSET);
+		readBuf.position(p + size);
+		// A client turned away because the server is full is only waited on to close the connection
+		if(!sentFull)
+			handle(opcode, text);
+		return true;
+	}
+	
+	/**
+	 * Handles the next complete line in the read buffer.
+	 * @return True if a line was handled, false if more bytes are needed.
+	 * @throws IOException If the reply can not be written.
+	 */
+	private boolean nextLine() throws IOException
+	{
+		while(readBuf.hasRemaining())
+		{
+			byte b = readBuf.get();
+			if(b == '\n')
+			{
+				int length = lineLength;
+				if(length > 0 && line[length - 1] == '\r')
+					length--;
+				lineLength = 0;
+				handleLine(new String(line, 0, length, CHARSET));
+				return true;
+			}
+			if(lineLength > BinaryProtocol.MAX_PAYLOAD)
+			{
+				// Already too long to be a valid message (a trailing '\r' aside), and its end may never come
+				lineTooLong();
+				return false;
+			}
+			if(lineLength == line.length)
+			{
+				byte bigger[] = new byte[Math.min(line.length * 2, BinaryProtocol.MAX_PAYLOAD + 1)];
+				System.arraycopy(line, 0, bigger, 0, lineLength);
+				line = bigger;
+			}
+			line[lineLength++] = b;
+		}
+		return false;
+	}
+	
+	/**
+	 * Tells a client using the text protocol that its line is too long to be a message, then closes the 
+	 * connection once the notice has been written, without reading the rest of the line.
+	 * @throws IOException If the notice can not be written.
+	 */
+	private void lineTooLong() throws IOException
+	{
+		closing = true;
+		chat.unsubscribe(this);
+		lineLength = 0;
+		encoder.encodeNotice(Protocol.MESSAGEERROR);
+		write();
+	}
+	
+	/**
+	 * Responds to a line from the client using the text protocol.
+	 * @param read The line read from the client.
+	 * @throws IOException If the reply can not be written.
+	 */
+	private void handleLine(String read) throws IOException
+	{
+		if(turnedAway)
+		{
+			// The server was full, tell the client then wait for it to acknowledge
+			if(sentFull)
+				close();
+			else
+			{
+				sentFull = true;
+				encoder.encodeServerFull();
+				write();
+			}
+			return;
+		}
+		byte opcode = BinaryProtocol.textOpcode(read);
+		handle(opcode, BinaryProtocol.textPayload(opcode, read));
+	}
+	
+	/**
+	 * Responds to a request from the client in the same way ServerThread.run() does.
+	 * @param opcode The request's opcode.
+	 * @param text The request's text, the message for a chat message or the name for a join.
+	 * @throws IOException If the reply can not be written.
+	 */
+	private void handle(byte opcode, String text) throws IOException
+	{
+		switch(opcode)
+		{
+		case BinaryProtocol.POLL:
+			sendUpdate();
+			break;
+		case BinaryProtocol.SUBSCRIBE:
+			push = true;
+			chat.subscribe(this);
+			break;
+		case BinaryProtocol.MESSAGE:
+			if(!Chatroom.isValidMessage(text))
+			{
+				encoder.encodeNotice(Protocol.MESSAGEERROR);
+				sendUpdate();
+				break;
+			}
+			chat.addMsg(text);
+			metrics.messageAppended();
+			if(!push)
+				sendUpdate();
+			break;
+		case BinaryProtocol.JOIN:
+			joinRoom(server.getRooms().getRoom(text));
+			break;
+		case BinaryProtocol.LEAVE:
+			joinRoom(server.getRooms().getLobby());
+			break;
+		case BinaryProtocol.LIST_ROOMS:
+			encoder.encodeNotice(server.getRooms().describe());
+			sendUpdate();
+			break;
+		case BinaryProtocol.HISTORY:
+			sendHistory(text);
+			break;
+		case BinaryProtocol.QUIT:
+		default:
+			// An opcode this version does not know also closes the connection
+			close();
+		}
+	}
+	
+	/**
+	 * Moves the client to another chatroom and starts sending them its messages, preceded by a line 
+	 * telling the client which room it is now in.
+	 * @param room The room to join, or null if it could not be joined.
+	 * @throws IOException If the reply can not be written.
+	 */
+	private void joinRoom(Chatroom room) throws IOException
+	{
+		if(room == null)
+			encoder.encodeNotice(Protocol.ROOMERROR);
+		else
+		{
+			chat.unsubscribe(this);
+			chat = room;
+			encoder.reset(room);
+			encoder.encodeRoomChanged(room.getName());
+			if(push)
+				chat.subscribe(this);
+		}
+		sendUpdate();
+	}
+	
+	/**
+	 * Starts sending a page of the messages before one the client already has, followed by any new messages.
+	 * @param before The ID of the oldest message the client has, or null if the request did not have one.
+	 * @throws IOException If the reply can not be written.
+	 */
+	private void sendHistory(String before) throws IOException
+	{
+		try
+		{
+			encoder.startPage(chat, Integer.parseInt(before.trim()));
+		}
+		catch(NumberFormatException | NullPointerException e)
+		{
+			// Not a message ID, there is nothing to page back from
+			return;
+		}
+		sendUpdate();
+	}
+	
+	/**
+	 * Starts sending all the chat messages the client has not recieved, separated by newline characters and 
+	 * null terminated. Only the first batch is encoded now, the rest follow as the channel drains.
+	 * @throws IOException If the reply can not be written.
+	 */
+	private void sendUpdate() throws IOException
+	{
+		if(!updatePending)
+			metrics.catchUp(chat.getSize() - 1 - encoder.getMsgID());
+		updatePending = true;
+		write();
+	}
+	
+	/**
+	 * Writes as much of the write buffer as the channel will take, encoding the next batch of a catch-up 
+	 * each time the buffer empties. Only asks the selector for write readiness while something is left, 
+	 * and stops reading requests from the client until a catch-up is finished so each one gets its own reply. 
+	 * Once the server has stopped, or the client sent a line too long for a message, the connection is closed 
+	 * as soon as everything has been written.
+	 * @throws IOException If the channel can not be written.
+	 */
+	public void write() throws IOException
+	{
+		while(true)
+		{
+			if(updatePending)
+			{
+				queue.trim(chat, encoder);
+				updatePending = !encoder.encode(chat);
+			}
+			ByteBuffer buf = encoder.getBuffer();
+			buf.flip();
+			int n = channel.write(buf);
+			buf.compact();
+			bytesOut += n;
+			metrics.bytesOut(n);
+			if(buf.position() > 0)
+			{
+				key.interestOps(updatePending || stopping || closing ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			if(!updatePending)
+				break;
+		}
+		if(stopping || closing)
+		{
+			close();
+			return;
+		}
+		if(pushStart != 0)
+		{
+			metrics.fanOut(System.nanoTime() - pushStart);
+			pushStart = 0;
+		}
+		key.interestOps(SelectionKey.OP_READ);
+		processInput();
+	}
+	
+	/**
+	 * Schedules the new messages to be pushed to the client on the connection's event loop. Several 
+	 * messages added before the loop gets to it are sent together. A client which has been too far 
+	 * behind for too long is disconnected instead.
+	 * @param chatroom The chatroom the message was added to.
+	 */
+	@Override
+	public void messageAdded(Chatroom chatroom)
+	{
+		if(chatroom != chat)
+			return;
+		if(!queue.offer(OutboundQueue.depth(chatroom, encoder)))
+		{
+			chatroom.unsubscribe(this);
+			server.log("Disconnected client " + threadID + " for falling too far behind");
+			forceClose();
+			return;
+		}
+		if(!updateScheduled.compareAndSet(false, true))
+			return;
+		final long added = System.nanoTime();
+		loop.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				updateScheduled.set(false);
+				if(closed || stopping || closing)
+					return;
+				if(pushStart == 0)
+					pushStart = added;
+				try
+				{
+					sendUpdate();
+				}
+				catch(IOException e)
+				{
+					close();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Tells the client the server has been stopped, cutting short any catch-up being sent, then closes 
+	 * the connection once the notice has been written. A client which has not said which protocol 
+	 * it uses yet is disconnected straight away.
+	 */
+	@Override
+	public void shutdown()
+	{
+		loop.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				if(closed || stopping || turnedAway)
+					return;
+				stopping = true;
+				chat.unsubscribe(NioConnection.this);
+				if(!negotiated)
+				{
+					close();
+					return;
+				}
+				updatePending = false;
+				encoder.encodeShutdown();
+				try
+				{
+					write();
+				}
+				catch(IOException e)
+				{
+					close();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Closes the connection on its event loop, without telling the client.
+	 */
+	@Override
+	public void forceClose()
+	{
+		loop.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				close();
+			}
+		});
+	}
+	
+	/**
+	 * Closes the channel and frees the client's thread ID on the server.
+	 */
+	public void close()
+	{
+		if(closed)
+			return;
+		closed = true;
+		if(isWaiting())
+			server.leaveWaitingRoom(this);
+		chat.unsubscribe(this);
+		key.cancel();
+		try
+		{
+			channel.close();
+		}
+		catch(IOException e) {}
+		if(threadID != -1)
+		{
+			metrics.connectionClosed(bytesIn, bytesOut);
+			server.endConnection(threadID);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package server;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A non-blocking alternative to starting one ServerThread per client. The server's own thread 
+ * accepts connections with a selector, and hands each accepted channel to one of a small fixed 
+ * set of event loops (round robin) which then do all of the reading and writing for it.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class NioEngine {
+	private Server server;
+	private ServerSocketChannel ssc;
+	private Chatroom chat;
+	private NioEventLoop loops[];
+	private int nextLoop;
+	private boolean backingOff;
+	
+	/**
+	 * Constructor for the NIO engine, one event loop is created for each available processor.
+	 * @param server The back-end server class.
+	 * @param ssc The bound server channel to accept clients from.
+	 * @param chatroom The chatroom shared by all the connections.
+	 * @throws IOException If a selector could not be opened.
+	 */
+	public NioEngine(Server server, ServerSocketChannel ssc, Chatroom chatroom) throws IOException
+	{
+		this.server = server;
+		this.ssc = ssc;
+		this.chat = chatroom;
+		loops = new NioEventLoop[Runtime.getRuntime().availableProcessors()];
+		for(int i = 0; i < loops.length; i++)
+			loops[i] = new NioEventLoop(i, server);
+	}
+	
+	/**
+	 * Starts the event loops then accepts clients until the server is closed, then closes the server channel and 
+	 * stops the loops. While the server is offline no clients are accepted, they wait in the socket backlog until 
+	 * the server is started again.
+	 * @throws IOException If the server channel fails.
+	 */
+	public void run() throws IOException
+	{
+		for(NioEventLoop loop : loops)
+			loop.start();
+		
+		ssc.configureBlocking(false);
+		Selector selector = Selector.open();
+		SelectionKey acceptKey = ssc.register(selector, 0);
+		while(!server.isClosed())
+		{
+			boolean online = server.isOnline();
+			// After a failed accept the selector just waits, so a full file table is not retried in a busy loop
+			acceptKey.interestOps(online && !backingOff ? SelectionKey.OP_ACCEPT : 0);
+			selector.select(500);
+			selector.selectedKeys().clear();
+			if(!online || backingOff)
+			{
+				backingOff = false;
+				continue;
+			}
+			
+			SocketChannel ch;
+			while((ch = accept()) != null)
+			{
+				try
+				{
+					ch.configureBlocking(false);
+					server.configureSocket(ch);
+				}
+				catch(IOException e)
+				{
+					// Only this client is lost, the peer may have reset the connection already
+					server.error("IO Exception Occurred setting up a client! " + e.getMessage());
+					try
+					{
+						ch.close();
+					}
+					catch(IOException e2) {}
+					continue;
+				}
+				loops[nextLoop].register(ch, chat, server, server.acquireSlot());
+				nextLoop = (nextLoop + 1) % loops.length;
+			}
+		}
+		selector.close();
+		ssc.close();
+		for(NioEventLoop loop : loops)
+			loop.close();
+	}
+	
+	/**
+	 * Accepts the next pending client. A failure, such as running out of file descriptors, is reported and 
+	 * the client is left in the backlog while accepting backs off for one select timeout.
+	 * @return The client's channel, or null if none is pending or it could not be accepted.
+	 */
+	private SocketChannel accept()
+	{
+		try
+		{
+			return ssc.accept();
+		}
+		catch(IOException e)
+		{
+			server.error("IO Exception Occurred accepting a client! " + e.getMessage());
+			backingOff = true;
+			return null;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package server;
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread running a selector over many client connections. Other threads never touch the 
+ * connections directly, they hand work to the loop with execute() which wakes up the selector. 
+ * Clients turned away because the server is full are disconnected if they are still connected 
+ * after Server.REJECT_TIMEOUT.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class NioEventLoop extends Thread {
+	private Selector selector;
+	private ConcurrentLinkedQueue<Runnable> tasks;
+	private ArrayDeque<NioConnection> rejected;
+	private ArrayDeque<Long> rejectDeadlines;
+	private Server server;
+	private boolean running = true;
+	
+	/**
+	 * Constructor for the event loop, opens its selector.
+	 * @param ID The loops number, used in the thread name.
+	 * @param server The back-end server class, which errors are reported to.
+	 * @throws IOException If the selector could not be opened.
+	 */
+	public NioEventLoop(int ID, Server server) throws IOException
+	{
+		super("NIO Event Loop " + ID);
+		this.server = server;
+		setDaemon(true);
+		selector = Selector.open();
+		tasks = new ConcurrentLinkedQueue<Runnable>();
+		rejected = new ArrayDeque<NioConnection>();
+		rejectDeadlines = new ArrayDeque<Long>();
+	}
+	
+	/**
+	 * Queues a task to be run on this loop's thread and wakes up the selector.
+	 * @param task The task to run.
+	 */
+	public void execute(Runnable task)
+	{
+		tasks.add(task);
+		selector.wakeup();
+	}
+	
+	/**
+	 * Stops the loop once the tasks already queued have run, closing any connection still open and the selector.
+	 */
+	public void close()
+	{
+		execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				running = false;
+			}
+		});
+	}
+	
+	/**
+	 * Registers a newly accepted channel with this loop.
+	 * @param ch The accepted (non-blocking) channel.
+	 * @param chat The chatroom the client is joining.
+	 * @param server The back-end server class.
+	 * @param slot The thread ID reserved for the client, or -1 if the server is full, in which case the 
+	 * client waits in the server's waiting room or, if there is no place in it, is turned away.
+	 */
+	public void register(final SocketChannel ch, final Chatroom chat, final Server server, final int slot)
+	{
+		execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				try
+				{
+					NioConnection conn = new NioConnection(ch, NioEventLoop.this, chat, server, slot);
+					conn.setKey(ch.register(selector, SelectionKey.OP_READ, conn));
+					if(slot != -1)
+						server.connected(slot, conn);
+					if(slot == -1 && !server.enterWaitingRoom(conn))
+					{
+						conn.turnAway();
+						rejected.add(conn);
+						rejectDeadlines.add(System.nanoTime() + Server.REJECT_TIMEOUT * 1000000L);
+					}
+				}
+				catch(IOException e)
+				{
+					try
+					{
+						ch.close();
+					}
+					catch(IOException e2) {}
+					if(slot != -1)
+						server.endConnection(slot);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Disconnects the rejected clients whose time is up. Every client gets the same timeout, so they 
+	 * expire in the order they were rejected.
+	 * @return The milliseconds until the next one expires, or 0 if none are waiting.
+	 */
+	private long expireRejected()
+	{
+		while(!rejected.isEmpty())
+		{
+			long left = rejectDeadlines.peek() - System.nanoTime();
+			if(left > 0)
+				return left / 1000000 + 1;
+			rejected.poll().close();
+			rejectDeadlines.poll();
+		}
+		return 0;
+	}
+	
+	/**
+	 * Runs the queued tasks then services every connection which is ready to be read or written, until the loop is closed.
+	 */
+	public void run()
+	{
+		while(running)
+		{
+			try
+			{
+				selector.select(expireRejected());
+				Runnable task;
+				while((task = tasks.poll()) != null)
+					task.run();
+				
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					NioConnection conn = (NioConnection) key.attachment();
+					try
+					{
+						if(key.isReadable())
+							conn.read();
+						if(key.isValid() && key.isWritable())
+							conn.write();
+					}
+					catch(IOException | CancelledKeyException e)
+					{
+						conn.close();
+					}
+				}
+			}
+			catch(IOException e)
+			{
+				server.error("IO Exception Occurred in NIO loop! " + e.getMessage());
+			}
+		}
+		for(SelectionKey key : selector.keys())
+			((NioConnection) key.attachment()).close();
+		try
+		{
+			selector.close();
+		}
+		catch(IOException e) {}
+	}
+}
@@ -0,0 +1,180 @@
+package server;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds what a connection has waiting to be pushed to its client, the gap between the newest message and 
+ * the last one encoded for it. When the gap passes the queue's capacity the connection's BackpressurePolicy decides what happens.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class OutboundQueue {
+	private final BackpressurePolicy policy;
+	private final int capacity;
+	private final long lagTimeout;
+	private final ServerMetrics metrics;
+	private volatile long lagStart;
+	private final AtomicBoolean disconnected = new AtomicBoolean();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition drained = lock.newCondition();
+	private volatile int waiting;
+	private volatile boolean closed;
+
+	/**
+	 * Constructor for a connection's outbound queue.
+	 * @param policy What to do once the client is too far behind.
+	 * @param capacity The most messages the client can be behind.
+	 * @param lagTimeout How long the client can be too far behind before it is disconnected, in milliseconds.
+	 * @param metrics Where the queue's depth, the messages dropped and the clients disconnected are recorded.
+	 */
+	public OutboundQueue(BackpressurePolicy policy, int capacity, long lagTimeout, ServerMetrics metrics)
+	{
+		this.policy = policy;
+		this.capacity = capacity;
+		this.lagTimeout = lagTimeout;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets the number of messages the client has not recieved.
+	 * @param chat The chatroom the client is in.
+	 * @param encoder The client's encoder.
+	 * @return The queue's depth.
+	 */
+	public static int depth(Chatroom chat, CatchUpEncoder encoder)
+	{
+		return chat.getSize() - 1 - encoder.getMsgID();
+	}
+
+	/**
+	 * Records the queue's depth after a message was added for the client. May be called from any thread.
+	 * @param depth The number of messages the client has not recieved.
+	 * @return False if the client has been too far behind for too long and has to be disconnected. 
+	 * Only returned once, to whichever thread noticed first.
+	 */
+	public boolean offer(int depth)
+	{
+		metrics.queueDepth(depth);
+		if(depth <= capacity)
+		{
+			lagStart = 0;
+			return true;
+		}
+		if(policy == BackpressurePolicy.DROP_OLDEST)
+			return true;
+		long now = System.nanoTime();
+		long start = lagStart;
+		if(start == 0)
+		{
+			lagStart = now;
+			return true;
+		}
+		return now - start < TimeUnit.MILLISECONDS.toNanos(lagTimeout) || !disconnect();
+	}
+	
+	/**
+	 * Makes the thread which added a message wait for the client to catch up to within the queue's capacity, 
+	 * under the BLOCK policy. Returns straight away under the other policies, or if the client is not too far behind.
+	 * @param chat The chatroom the client is in.
+	 * @param encoder The client's encoder.
+	 * @return False if the client was still too far behind after the lag timeout and has to be disconnected. 
+	 * Only returned once, to whichever thread noticed first.
+	 */
+	public boolean awaitCapacity(Chatroom chat, CatchUpEncoder encoder)
+	{
+		if(policy != BackpressurePolicy.BLOCK || depth(chat, encoder) <= capacity)
+			return true;
+		long remaining = TimeUnit.MILLISECONDS.toNanos(lagTimeout);
+		lock.lock();
+		// Counted before checking the depth, so a write which catches the client up after the check still signals
+		waiting++;
+		try
+		{
+			while(depth(chat, encoder) > capacity && !closed)
+			{
+				if(remaining <= 0)
+					return !disconnect();
+				remaining = drained.awaitNanos(remaining);
+			}
+			return true;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return true;
+		}
+		finally
+		{
+			waiting--;
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Wakes up threads waiting for room in the queue. Called after each batch is written to the client.
+	 */
+	public void drained()
+	{
+		if(waiting == 0)
+			return;
+		lock.lock();
+		try
+		{
+			drained.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Stops any thread from waiting for room in the queue, once the connection has been closed.
+	 */
+	public void close()
+	{
+		closed = true;
+		lock.lock();
+		try
+		{
+			drained.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Records that the client is being disconnected for falling too far behind.
+	 * @return False if it already was.
+	 */
+	private boolean disconnect()
+	{
+		if(!disconnected.compareAndSet(false, true))
+			return false;
+		metrics.slowConsumerDisconnected();
+		return true;
+	}
+
+	/**
+	 * Skips the oldest messages the client has not recieved if it is too far behind, under the DROP_OLDEST policy.
+	 * Must be called before encoding the next batch, by whichever thread is writing to the client.
+	 * @param chat The chatroom the client is in.
+	 * @param encoder The client's encoder.
+	 */
+	public void trim(Chatroom chat, CatchUpEncoder encoder)
+	{
+		if(policy != BackpressurePolicy.DROP_OLDEST)
+			return;
+		int over = depth(chat, encoder) - capacity;
+		if(over > 0)
+		{
+			encoder.skip(over);
+			metrics.messagesDropped(over);
+		}
+	}
+}
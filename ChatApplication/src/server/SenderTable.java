@@ -0,0 +1,69 @@
+package server;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Interns the senders of a chat's messages, so a message stores a small ID instead of its own copy of
+ * the sender's handle. Each name is kept once, as the UTF-8 bytes it is encoded with. Looking up a sender
+ * which has been seen before never locks, only adding a new one does. A chat can have at most MAX_SENDERS
+ * senders, the messages of any more are stored without one.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class SenderTable {
+	/** The most senders a table holds. */
+	public static final int MAX_SENDERS = 65536;
+	/** The longest name, in characters, which is taken as a sender. */
+	public static final int MAX_NAME_LENGTH = 64;
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private volatile byte names[][] = new byte[16][];
+	private int count;
+
+	/**
+	 * Gets the ID of a sender, adding it if it has not been seen before. Safe to call from any number of threads at once.
+	 * @param name The sender's name.
+	 * @return The sender's ID, or -1 if the table is full.
+	 */
+	public int intern(String name)
+	{
+		Integer id = ids.get(name);
+		if(id != null)
+			return id;
+		lock.lock();
+		try
+		{
+			id = ids.get(name);
+			if(id != null)
+				return id;
+			if(count == MAX_SENDERS)
+				return -1;
+			byte table[][] = names;
+			if(count == table.length)
+				table = Arrays.copyOf(table, table.length * 2);
+			table[count] = name.getBytes(StandardCharsets.UTF_8);
+			// Published before the ID is handed out, so whoever is given the ID can read the name
+			names = table;
+			ids.put(name, count);
+			return count++;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets a sender's name.
+	 * @param id The sender's ID, as returned by intern().
+	 * @return The name as UTF-8, which must not be modified.
+	 */
+	public byte[] getName(int id)
+	{
+		return names[id];
+	}
+}
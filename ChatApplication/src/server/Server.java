@@ -1,161 +1,725 @@
-package server;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-
-import chat_constants.Constants;
-
-
-/**
- * Accepts clients as long as the server has not reached its capacity 
- * and the server is online. Once a client is accepted, a new ServerThread is started and 
- * is passed the client's socket connection.
- * @author Bailey Duncan
- * @since May 18, 2017
- * @version 1.0
- */
-public class Server extends Thread{
-	
-	private ServerSocket ss;
-	private Socket sock;
-	private ServerThread clients[];
-	private ServerGUI serverGUI;
-	private Chatroom chat;
-	private int shutdownMsgID;
-	
-	private String chatName;
-	private boolean  clientConnected[];
-	private int CLIENT_CAP;
-	private int clientCount;
-	
-	/**
-	 * Constructor for the Server class.
-	 * @param port The port number which the server operates on.
-	 * @param chatname The title of the chatroom.
-	 * @param cap The maximum number of connected clients allowed on the server
-	 */
-	public Server(int port, String chatname, int cap)
-	{
-		try{
-			this.CLIENT_CAP = cap;
-			chatName = chatname;
-			ss = new ServerSocket(port);
-			clients = new ServerThread[CLIENT_CAP];
-			clientConnected = new boolean[CLIENT_CAP];
-			clientCount = 0;
-			chat = new Chatroom();
-			serverGUI = new ServerGUI(this, CLIENT_CAP, port);
-		}
-		catch(IOException e)
-		{
-			Constants.errorPopup("IOException Occurred! " + e.getMessage());
-		}
-	}
-	
-	/**
-	 * Replaces the shutdown message in the chat, allowing clients to connect to the server again.
-	 */
-	public void endShutdownMsg()
-	{
-		if(chat.getMsg(shutdownMsgID).equals(Constants.SERVERSHUTDOWN))
-		{
-			chat.setMsg(shutdownMsgID, "Server was shutdown");
-			chat.addMsg("Server Restarted");
-		}
-	}
-	
-	/**
-	 * Generates a shutdown message in the chat, which will cause the clients to be kicked when read.
-	 */
-	public void shutdown()
-	{
-		shutdownMsgID = chat.getSize();
-		chat.addMsg(Constants.SERVERSHUTDOWN);
-	}
-	
-	/**
-	 * Increments or decrements the number of clients connected to the server.
-	 * @param increment True if incrementing (new client connected), false if decrementing (client left or was kicked).
-	 */
-	public synchronized void updateClientCount(boolean increment)
-	{
-		if(increment)
-			clientCount++;
-		else
-			clientCount--;
-	}
-	
-	/**
-	 * Decrements the client count in both the server and serverGUI, and changes 
-	 * the "clientConnected" value at the thread ID number to false. This allows 
-	 * that ID to be available for newly connected clients.
-	 * @param clientNum The thread ID (array index) assigned to the client.
-	 */
-	public synchronized void endConnection(int clientNum)
-	{
-		clientConnected[clientNum] = false;
-		updateClientCount(false);
-		serverGUI.updateLoad(clientCount);
-	}
-	
-	/**
-	 * Accepts clients as long as the server is online and the server is not full, and starts a ServerThread to
-	 * communicate with clients. 
-	 */
-	public void run()
-	{
-		chat.addMsg("Welcome to " + chatName);
-		while(true)
-		{
-				try
-				{
-					if(serverGUI.isOnline())
-					{
-						sock = ss.accept();
-						if(clientCount == CLIENT_CAP)
-						{
-							BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-							PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
-							in.readLine();
-							out.println(Constants.SERVERFULL);
-							in.readLine(); // Wait for acknowledge
-							sock.close();
-							sock = null;
-						}
-						else
-						{
-							for(int i = 0; i < CLIENT_CAP; i++)
-							{
-								if(!clientConnected[i])
-								{
-									clientConnected[i] = true;
-									clients[i] = new ServerThread(sock, chat, this, i);
-									clients[i].start();
-									sock = null;
-									updateClientCount(true);
-									serverGUI.updateLoad(clientCount);
-									break;
-								}
-							}
-						}
-					}
-					else
-					{
-						Thread.sleep(500);
-					}
-				}
-			catch(IOException e)
-			{
-				Constants.errorPopup("IO Exception Occurred! " + e.getMessage());
-			}
-			catch(Exception e)
-			{
-				Constants.errorPopup("An Exception Occurred! " + e.getMessage());
-			}
-		}
-	}
-}
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import chat_constants.BinaryProtocol;
+
+
+/**
+ * Accepts clients as long as the server has not reached its capacity 
+ * and the server is online. Once a client is accepted, a new ServerThread is started and 
+ * is passed the client's socket connection, or in NIO mode the connection is handled by the NioEngine 
+ * (which a server with a waiting room always uses).
+ * @author Bailey Duncan
+ * @since May 18, 2017
+ * @version 1.0
+ */
+public class Server extends Thread{
+	/** How long a client turned away because the server is full has to read the notice and leave, in milliseconds. */
+	public static final int REJECT_TIMEOUT = 5000;
+	/** The most turned away clients waited on at once, any more are disconnected without being told why. */
+	private static final int MAX_REJECTING = 64;
+	/** How long connections have to be told the server has stopped before they are closed regardless, in milliseconds. */
+	public static final int STOP_TIMEOUT = 5000;
+	
+	private ServerSocket ss;
+	private ServerSocketChannel ssc;
+	private AtomicReferenceArray<ClientConnection> connections;
+	private ServerView view;
+	private ChatroomRegistry rooms;
+	private Chatroom chat;
+	private ServerMode mode;
+	private ExecutorService clientExecutor;
+	private ServerMetrics metrics;
+	private ArrayDeque<NioConnection> waiting;
+	private int waitingRoomSize;
+	private BackpressurePolicy backpressure;
+	private int outboundQueueSize, lagTimeout;
+	private boolean tcpNoDelay;
+	private int sendBufferSize;
+	private int joinHistory;
+	private final AtomicInteger rejecting = new AtomicInteger();
+	private final ReentrantLock waitingLock = new ReentrantLock();
+	private final ReentrantLock statusLock = new ReentrantLock();
+	private volatile boolean online;
+	private volatile boolean closed;
+	private boolean started;
+	
+	private String chatName;
+	private SlotAllocator slots;
+	private int CLIENT_CAP;
+	
+	/**
+	 * Constructor for the Server class, using one thread per client.
+	 * @param port The port number which the server operates on.
+	 * @param chatname The title of the chatroom.
+	 * @param cap The maximum number of connected clients allowed on the server
+	 */
+	public Server(int port, String chatname, int cap)
+	{
+		this(new ServerConfig(port, chatname, cap));
+	}
+	
+	/**
+	 * Constructor for the Server class, showing the server in a ServerGUI.
+	 * @param config The port, chat name, capacity and other settings of the server.
+	 */
+	public Server(ServerConfig config)
+	{
+		this(config, null);
+	}
+	
+	/**
+	 * Constructor for the Server class. The server starts offline, call updateStatus(false) to start it.
+	 * @param config The port, chat name, capacity and other settings of the server.
+	 * @param view Where the server reports its status, or null to open a ServerGUI.
+	 */
+	public Server(ServerConfig config, ServerView view)
+	{
+		metrics = new ServerMetrics();
+		this.view = view != null ? view : new ServerGUI(this, config.getClientCap(), config.getPort());
+		try{
+			int port = config.getPort();
+			this.CLIENT_CAP = config.getClientCap();
+			this.mode = config.getMode();
+			chatName = config.getChatName();
+			tcpNoDelay = config.isTcpNoDelay();
+			sendBufferSize = config.getSendBufferSize();
+			waitingRoomSize = config.getWaitingRoomSize();
+			if(waitingRoomSize > 0 && mode != ServerMode.NIO)
+			{
+				// Waiting clients are parked on a selector, and a blocking thread can not share a channel's socket with one
+				log("A waiting room needs the NIO engine, using it instead of " + mode + ".");
+				mode = ServerMode.NIO;
+			}
+			if(mode == ServerMode.NIO)
+			{
+				ssc = ServerSocketChannel.open();
+				// Set before binding so accepted sockets inherit it and can advertise a large enough window
+				if(config.getReceiveBufferSize() > 0)
+					ssc.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
+				ssc.bind(new InetSocketAddress(port));
+			}
+			else
+			{
+				ss = new ServerSocket();
+				if(config.getReceiveBufferSize() > 0)
+					ss.setReceiveBufferSize(config.getReceiveBufferSize());
+				ss.bind(new InetSocketAddress(port));
+			}
+			connections = new AtomicReferenceArray<ClientConnection>(CLIENT_CAP);
+			slots = new SlotAllocator(CLIENT_CAP);
+			metrics.watchLoad(slots, this.view);
+			waiting = new ArrayDeque<NioConnection>();
+			backpressure = config.getBackpressure();
+			outboundQueueSize = config.getOutboundQueueSize();
+			lagTimeout = config.getLagTimeout();
+			joinHistory = config.getJoinHistory();
+			metrics.register(getLocalPort(), this.view);
+			long start = System.nanoTime();
+			rooms = new ChatroomRegistry(config, this.view);
+			chat = rooms.getLobby();
+			if(config.getJournalDir() != null)
+			{
+				int recovered = 0;
+				for(Chatroom room : rooms.getRooms())
+					recovered += room.getSize();
+				log("Recovered " + recovered + " messages in " + rooms.getRooms().size() 
+						+ " rooms from the journal in " + (System.nanoTime() - start) / 1000000 + " ms");
+			}
+			if(mode == ServerMode.VIRTUAL)
+			{
+				clientExecutor = newVirtualThreadExecutor();
+				if(clientExecutor == null)
+					log("Virtual threads need Java 21 or newer, using platform threads instead.");
+			}
+			if(clientExecutor == null)
+				clientExecutor = Executors.newCachedThreadPool();
+		}
+		catch(IOException e)
+		{
+			error("IOException Occurred! " + e.getMessage());
+			metrics.close();
+		}
+	}
+	
+	/**
+	 * Creates an executor which starts a new virtual thread for every task. Looked up reflectively 
+	 * so the server still compiles and runs on Java versions without virtual threads.
+	 * @return The executor, or null if virtual threads are not supported by this JVM.
+	 */
+	private static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Tells every connected and waiting client the server has been stopped and closes their connections, 
+	 * and forces the chat's journals out to disk. 
+	 * Nothing is added to the chat, so there is nothing to undo when the server is started again. Any 
+	 * connection still open after STOP_TIMEOUT (a client which stopped reading) is closed without waiting further.
+	 */
+	private void shutdown()
+	{
+		final ArrayList<ClientConnection> open = new ArrayList<ClientConnection>();
+		for(int i = 0; i < CLIENT_CAP; i++)
+		{
+			ClientConnection conn = connections.get(i);
+			if(conn != null)
+				open.add(conn);
+		}
+		waitingLock.lock();
+		try
+		{
+			open.addAll(waiting);
+		}
+		finally
+		{
+			waitingLock.unlock();
+		}
+		for(ClientConnection conn : open)
+			conn.shutdown();
+		rooms.forceJournals();
+		clientExecutor.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				try
+				{
+					Thread.sleep(STOP_TIMEOUT);
+				}
+				catch(InterruptedException e) {}
+				for(ClientConnection conn : open)
+					conn.forceClose();
+			}
+		});
+	}
+	
+	/**
+	 * Waits for every client to have been disconnected after the server was stopped.
+	 * @param millis The longest time to wait in milliseconds.
+	 * @return True if every client has been disconnected.
+	 * @throws InterruptedException If the thread was interrupted while waiting.
+	 */
+	public boolean awaitStopped(long millis) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + millis * 1000000L;
+		while(slots.getUsed() > 0 || metrics.getWaiting() > 0)
+		{
+			if(System.nanoTime() - deadline >= 0)
+				return false;
+			Thread.sleep(20);
+		}
+		return true;
+	}
+	
+	/**
+	 * Records the connection using a thread ID, so the server can reach it. A connection which arrives 
+	 * as the server is being stopped is told straight away.
+	 * @param slot The connection's thread ID.
+	 * @param conn The connection.
+	 */
+	public void connected(int slot, ClientConnection conn)
+	{
+		connections.set(slot, conn);
+		if(!online)
+			conn.shutdown();
+	}
+	
+	/**
+	 * Starts or stops the server. The first start starts the server's thread, later ones accept clients again. 
+	 * When stopped, the server will "kick" the clients connected and will stop accepting new clients until started 
+	 * again. Once restarted, the chat will still retain all old messages for clients.
+	 * @param disconnect false to start the server, true to stop it.
+	 */
+	public void updateStatus(boolean disconnect)
+	{
+		statusLock.lock();
+		try
+		{
+			if(!disconnect && !online && !closed)
+			{
+				online = true;
+				view.statusChanged(true);
+				if(!started)
+				{
+					start();
+					started = true;
+				}
+			}
+			else if(disconnect && online)
+			{
+				online = false;
+				view.statusChanged(false);
+				shutdown();
+			}
+		}
+		finally
+		{
+			statusLock.unlock();
+		}
+	}
+	
+	/**
+	 * Stops the server for good, kicking any clients as updateStatus(true) does, then closes the server's port, 
+	 * ends its thread and releases its metrics. Once closed the server can not be started again.
+	 */
+	public void close()
+	{
+		boolean running;
+		statusLock.lock();
+		try
+		{
+			if(closed)
+				return;
+			updateStatus(true);
+			closed = true;
+			running = started;
+		}
+		finally
+		{
+			statusLock.unlock();
+		}
+		try
+		{
+			// Wakes up an accept which was waiting when the server went offline
+			if(ss != null)
+				ss.close();
+			// A running NIO engine closes its channel itself once it sees the server is closed
+			if(ssc != null && !running)
+				ssc.close();
+		}
+		catch(IOException e) {}
+		metrics.close();
+		// Lets the clients still being told finish, and the forced close after STOP_TIMEOUT run
+		if(clientExecutor != null)
+			clientExecutor.shutdown();
+	}
+	
+	/**
+	 * Checks if the server has been closed for good.
+	 * @return True once close() has been called.
+	 */
+	public boolean isClosed()
+	{
+		return closed;
+	}
+	
+	/**
+	 * Adds a line to the server's log.
+	 * @param msg The text to add.
+	 */
+	public void log(String msg)
+	{
+		view.log(msg);
+	}
+	
+	/**
+	 * Reports an error to the host.
+	 * @param error The error message.
+	 */
+	public void error(String error)
+	{
+		view.error(error);
+	}
+	
+	/**
+	 * Gets the chatrooms hosted by the server.
+	 * @return The chatroom registry.
+	 */
+	public ChatroomRegistry getRooms()
+	{
+		return rooms;
+	}
+	
+	/**
+	 * Gets the server's metrics.
+	 * @return The metrics.
+	 */
+	public ServerMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Creates the outbound queue for a new connection, using the server's backpressure settings.
+	 * @return The queue.
+	 */
+	public OutboundQueue newOutboundQueue()
+	{
+		return new OutboundQueue(backpressure, outboundQueueSize, lagTimeout, metrics);
+	}
+	
+	/**
+	 * Gets how many of a room's most recent messages a client is sent when it joins, and in each page of older ones.
+	 * @return The number of messages, 0 for all of them.
+	 */
+	public int getJoinHistory()
+	{
+		return joinHistory;
+	}
+	
+	/**
+	 * Sets the socket options of a client which has just been accepted by the NIO engine. Every reply is already 
+	 * written as one batch, so Nagle's algorithm would only delay it waiting for the client to acknowledge the last one.
+	 * @param ch The client's channel.
+	 */
+	public void configureSocket(SocketChannel ch)
+	{
+		try
+		{
+			ch.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+			if(sendBufferSize > 0)
+				ch.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+		}
+		catch(IOException e)
+		{
+			// The client has already gone, which its connection finds out on its first read
+		}
+	}
+	
+	/**
+	 * Sets the socket options of a client which has just been accepted, in the modes with a thread per client.
+	 * @param sock The client's socket.
+	 */
+	private void configureSocket(Socket sock)
+	{
+		try
+		{
+			sock.setTcpNoDelay(tcpNoDelay);
+			if(sendBufferSize > 0)
+				sock.setSendBufferSize(sendBufferSize);
+		}
+		catch(SocketException e)
+		{
+			// The client has already gone, which its thread finds out on its first read
+		}
+	}
+	
+	/**
+	 * Runs a task on the threads (or virtual threads) clients are handled on.
+	 * @param task The task.
+	 */
+	public void execute(Runnable task)
+	{
+		clientExecutor.execute(task);
+	}
+	
+	/**
+	 * Checks if the server's port was opened, which fails if another program is using it.
+	 * @return True if the server can accept clients once started.
+	 */
+	public boolean isListening()
+	{
+		return ss != null || ssc != null;
+	}
+	
+	/**
+	 * Gets the port the server is listening on, which is useful when it was started on port 0.
+	 * @return The port, or -1 if the server could not open it.
+	 */
+	public int getLocalPort()
+	{
+		if(ssc != null)
+			return ssc.socket().getLocalPort();
+		return ss != null ? ss.getLocalPort() : -1;
+	}
+	
+	/**
+	 * Checks if the server is accepting clients.
+	 * @return True if the server has been started and not stopped.
+	 */
+	public boolean isOnline()
+	{
+		return online;
+	}
+	
+	/**
+	 * Reserves a free thread ID (array index) for a newly accepted client. Lock-free and constant time, 
+	 * see SlotAllocator, so connection churn costs the same at any capacity.
+	 * @return The reserved ID, or -1 if the server is full.
+	 */
+	public int acquireSlot()
+	{
+		int slot = slots.acquire();
+		if(slot != -1)
+			metrics.accepted();
+		return slot;
+	}
+	
+	/**
+	 * Frees the thread ID of a client which left or was kicked, so it is available for newly connected 
+	 * clients. If a client is waiting for a place, the ID is 
+	 * handed straight to it instead. Only then is a lock taken, so the waiting room stays first come first served. 
+	 * It is a ReentrantLock rather than synchronized so virtual threads waiting on it do not pin their carrier threads.
+	 * @param clientNum The thread ID (array index) assigned to the client.
+	 */
+	public void endConnection(int clientNum)
+	{
+		connections.set(clientNum, null);
+		if(waitingRoomSize == 0)
+		{
+			slots.release(clientNum);
+			return;
+		}
+		waitingLock.lock();
+		try
+		{
+			NioConnection next = waiting.poll();
+			if(next != null)
+			{
+				metrics.accepted();
+				next.admit(clientNum);
+				waitingRoomChanged();
+				return;
+			}
+			slots.release(clientNum);
+		}
+		finally
+		{
+			waitingLock.unlock();
+		}
+	}
+	
+	/**
+	 * Puts a client which connected while the server was full in the waiting room. If a place has come 
+	 * free since, the client is let in straight away.
+	 * @param conn The waiting client's connection.
+	 * @return False if the waiting room is full (or the server has none), and the client has to be turned away.
+	 */
+	public boolean enterWaitingRoom(NioConnection conn)
+	{
+		waitingLock.lock();
+		try
+		{
+			if(waiting.isEmpty())
+			{
+				int slot = acquireSlot();
+				if(slot != -1)
+				{
+					conn.admit(slot);
+					return true;
+				}
+			}
+			if(waiting.size() >= waitingRoomSize)
+			{
+				metrics.rejected();
+				return false;
+			}
+			waiting.add(conn);
+			conn.setWaitingPlace(waiting.size());
+			metrics.setWaiting(waiting.size());
+			return true;
+		}
+		finally
+		{
+			waitingLock.unlock();
+		}
+	}
+	
+	/**
+	 * Takes a client which disconnected while waiting out of the waiting room.
+	 * @param conn The waiting client's connection.
+	 */
+	public void leaveWaitingRoom(NioConnection conn)
+	{
+		waitingLock.lock();
+		try
+		{
+			if(waiting.remove(conn))
+				waitingRoomChanged();
+		}
+		finally
+		{
+			waitingLock.unlock();
+		}
+	}
+	
+	/**
+	 * Tells every waiting client its new place in the queue. Must be called holding the waiting room lock.
+	 */
+	private void waitingRoomChanged()
+	{
+		int place = 1;
+		for(NioConnection conn : waiting)
+			conn.setWaitingPlace(place++);
+		metrics.setWaiting(waiting.size());
+	}
+	
+	/**
+	 * Starts a ServerThread for a newly accepted client on the client executor.
+	 * @param sock The client's socket.
+	 * @param slot The thread ID reserved for the client.
+	 */
+	private void startThread(Socket sock, int slot)
+	{
+		ServerThread thread = new ServerThread(sock, chat, this, slot);
+		connected(slot, thread);
+		clientExecutor.execute(thread);
+	}
+	
+	/**
+	 * Gets the server's engine.
+	 * @return The mode the server handles clients in.
+	 */
+	public ServerMode getMode()
+	{
+		return mode;
+	}
+	
+	/**
+	 * Turns a client away because the server is full. The client is told on the client executor rather than 
+	 * the accept thread, so a slow or malicious client can not hold up accepting everyone else.
+	 * @param sock The rejected client's socket.
+	 */
+	private void reject(final Socket sock)
+	{
+		metrics.rejected();
+		if(rejecting.incrementAndGet() > MAX_REJECTING)
+		{
+			rejecting.decrementAndGet();
+			try
+			{
+				sock.close();
+			}
+			catch(IOException e) {}
+			return;
+		}
+		clientExecutor.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				try
+				{
+					rejectClient(sock);
+				}
+				catch(IOException e)
+				{
+					// The client timed out or went away, either way it has been disconnected
+				}
+				finally
+				{
+					rejecting.decrementAndGet();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Tells a client the server is full, in whichever protocol it opened with, then waits for it to 
+	 * acknowledge (or, using the binary protocol, to close the connection) and closes the socket. 
+	 * A client which takes longer than REJECT_TIMEOUT is disconnected.
+	 * @param sock The rejected client's socket.
+	 * @throws IOException If the client can not be read or written, or timed out.
+	 */
+	private void rejectClient(Socket sock) throws IOException
+	{
+		try
+		{
+			sock.setSoTimeout(REJECT_TIMEOUT);
+			BufferedInputStream in = new BufferedInputStream(sock.getInputStream());
+			OutputStream out = sock.getOutputStream();
+			CatchUpEncoder reply = new CatchUpEncoder();
+			int version = BinaryProtocol.readHello(in);
+			if(version > 0)
+			{
+				reply.setBinary(true);
+				reply.encodeHello(version);
+				reply.encodeServerFull();
+				reply.writeTo(out);
+				while(in.read() != -1); // Wait for the client to close
+			}
+			else
+			{
+				BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+				lines.readLine();
+				reply.encodeServerFull();
+				reply.writeTo(out);
+				lines.readLine(); // Wait for acknowledge
+			}
+		}
+		finally
+		{
+			sock.close();
+		}
+	}
+	
+	/**
+	 * Accepts clients as long as the server is online and the server is not full, and starts a ServerThread to
+	 * communicate with clients on the client executor. In NIO mode the selector based engine runs on this thread instead. 
+	 * Returns once the server has been closed.
+	 */
+	public void run()
+	{
+		// A lobby recovered from the journal already has its welcome
+		if(chat.getSize() == 0)
+			chat.addMsg("Welcome to " + chatName);
+		if(mode == ServerMode.NIO)
+		{
+			try
+			{
+				new NioEngine(this, ssc, chat).run();
+			}
+			catch(IOException e)
+			{
+				error("IO Exception Occurred! " + e.getMessage());
+			}
+			return;
+		}
+		while(!closed)
+		{
+				try
+				{
+					if(isOnline())
+					{
+						Socket sock = ss.accept();
+						configureSocket(sock);
+						int slot = acquireSlot();
+						if(slot != -1)
+							startThread(sock, slot);
+						else
+							reject(sock);
+					}
+					else
+					{
+						Thread.sleep(500);
+					}
+				}
+			catch(IOException e)
+			{
+				if(!closed)
+					error("IO Exception Occurred! " + e.getMessage());
+			}
+			catch(Exception e)
+			{
+				error("An Exception Occurred! " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,428 @@
+package server;
+import java.util.Properties;
+
+/**
+ * The settings a server is started with. Anything not set keeps its default value. 
+ * A server run without a display reads them from properties, see fromProperties().
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class ServerConfig {
+	private int port;
+	private String chatName = "";
+	private int clientCap = 1;
+	private ServerMode mode = ServerMode.THREADED;
+	private int maxMessages;
+	private long maxHistoryBytes;
+	private String journalDir;
+	private int journalSegmentSize = ChatJournal.DEFAULT_SEGMENT_SIZE;
+	private int maxRooms = 100;
+	private int waitingRoomSize;
+	private BackpressurePolicy backpressure = BackpressurePolicy.DROP_OLDEST;
+	private int outboundQueueSize = 1000;
+	private int lagTimeout = 5000;
+	private boolean tcpNoDelay = true;
+	private int sendBufferSize;
+	private int receiveBufferSize;
+	private int joinHistory = 200;
+	private boolean offHeapHistory;
+	
+	/**
+	 * Constructor for the server settings.
+	 * @param port The port number which the server operates on.
+	 * @param chatName The title of the chatroom.
+	 * @param clientCap The maximum number of connected clients allowed on the server.
+	 */
+	public ServerConfig(int port, String chatName, int clientCap)
+	{
+		this.port = port;
+		this.chatName = chatName;
+		this.clientCap = clientCap;
+	}
+	
+	/**
+	 * Reads the settings from properties, as given on the command line or in a properties file. The keys are 
+	 * port, cap, name, mode (THREADED, VIRTUAL or NIO), maxMessages, maxHistoryBytes, journalDir, 
+	 * journalSegmentSize, maxRooms, waitingRoom, backpressure (BLOCK, DROP_OLDEST or DISCONNECT), outboundQueue, 
+	 * lagTimeout, tcpNoDelay (true or false), sendBuffer, receiveBuffer, joinHistory and 
+	 * offHeapHistory (true or false). The port and cap are required, anything else missing keeps its default.
+	 * @param p The properties.
+	 * @return The settings.
+	 * @throws IllegalArgumentException If a setting is missing or invalid, with a message for the user.
+	 */
+	public static ServerConfig fromProperties(Properties p)
+	{
+		int port = intProperty(p, "port", -1);
+		if(port < 1 || port > 65535)
+			throw new IllegalArgumentException("The port must be a number between 1 and 65535.");
+		int cap = intProperty(p, "cap", -1);
+		if(cap < 1)
+			throw new IllegalArgumentException("The cap must be a positive number.");
+		ServerConfig config = new ServerConfig(port, p.getProperty("name", "").trim(), cap);
+		String mode = p.getProperty("mode");
+		if(mode != null)
+		{
+			try
+			{
+				config.setMode(ServerMode.valueOf(mode.trim().toUpperCase()));
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("The mode must be THREADED, VIRTUAL or NIO.");
+			}
+		}
+		String backpressure = p.getProperty("backpressure");
+		if(backpressure != null)
+		{
+			try
+			{
+				config.setBackpressure(BackpressurePolicy.valueOf(backpressure.trim().toUpperCase()));
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("The backpressure must be BLOCK, DROP_OLDEST or DISCONNECT.");
+			}
+		}
+		config.setMaxMessages(intProperty(p, "maxMessages", config.maxMessages));
+		config.setMaxHistoryBytes(longProperty(p, "maxHistoryBytes", config.maxHistoryBytes));
+		config.setJournalDir(p.getProperty("journalDir"));
+		config.setJournalSegmentSize(intProperty(p, "journalSegmentSize", config.journalSegmentSize));
+		config.setMaxRooms(intProperty(p, "maxRooms", config.maxRooms));
+		config.setWaitingRoomSize(intProperty(p, "waitingRoom", config.waitingRoomSize));
+		config.setOutboundQueueSize(intProperty(p, "outboundQueue", config.outboundQueueSize));
+		config.setLagTimeout(intProperty(p, "lagTimeout", config.lagTimeout));
+		String noDelay = p.getProperty("tcpNoDelay");
+		if(noDelay != null)
+		{
+			if(!noDelay.trim().equalsIgnoreCase("true") && !noDelay.trim().equalsIgnoreCase("false"))
+				throw new IllegalArgumentException("The tcpNoDelay must be true or false.");
+			config.setTcpNoDelay(Boolean.parseBoolean(noDelay.trim()));
+		}
+		config.setSendBufferSize(intProperty(p, "sendBuffer", config.sendBufferSize));
+		config.setReceiveBufferSize(intProperty(p, "receiveBuffer", config.receiveBufferSize));
+		config.setJoinHistory(intProperty(p, "joinHistory", config.joinHistory));
+		String offHeap = p.getProperty("offHeapHistory");
+		if(offHeap != null)
+		{
+			if(!offHeap.trim().equalsIgnoreCase("true") && !offHeap.trim().equalsIgnoreCase("false"))
+				throw new IllegalArgumentException("The offHeapHistory must be true or false.");
+			config.setOffHeapHistory(Boolean.parseBoolean(offHeap.trim()));
+		}
+		if(config.maxMessages < 0 || config.maxHistoryBytes < 0 || config.journalSegmentSize < 1 || config.maxRooms < 1)
+			throw new IllegalArgumentException("The history limits can not be negative, and the segment size and room limit must be positive.");
+		if(config.waitingRoomSize < 0)
+			throw new IllegalArgumentException("The waiting room size can not be negative.");
+		if(config.outboundQueueSize < 1 || config.lagTimeout < 0)
+			throw new IllegalArgumentException("The outbound queue must be positive and the lag timeout can not be negative.");
+		if(config.sendBufferSize < 0 || config.receiveBufferSize < 0)
+			throw new IllegalArgumentException("The socket buffer sizes can not be negative.");
+		if(config.joinHistory < 0)
+			throw new IllegalArgumentException("The join history can not be negative.");
+		return config;
+	}
+	
+	/**
+	 * Reads a whole number property.
+	 * @param p The properties.
+	 * @param key The property's name.
+	 * @param def The value to use if the property is not set.
+	 * @return The property's value.
+	 * @throws IllegalArgumentException If the property is not a number or does not fit in an int.
+	 */
+	private static int intProperty(Properties p, String key, int def)
+	{
+		long value = longProperty(p, key, def);
+		if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The " + key + " is too large.");
+		return (int) value;
+	}
+	
+	/**
+	 * Reads a whole number property.
+	 * @param p The properties.
+	 * @param key The property's name.
+	 * @param def The value to use if the property is not set.
+	 * @return The property's value.
+	 * @throws IllegalArgumentException If the property is not a number.
+	 */
+	private static long longProperty(Properties p, String key, long def)
+	{
+		String value = p.getProperty(key);
+		if(value == null || value.trim().isEmpty())
+			return def;
+		try
+		{
+			return Long.parseLong(value.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IllegalArgumentException("The " + key + " must be a number.");
+		}
+	}
+	
+	/**
+	 * @return The port number which the server operates on.
+	 */
+	public int getPort()
+	{
+		return port;
+	}
+	
+	/**
+	 * @return The title of the chatroom.
+	 */
+	public String getChatName()
+	{
+		return chatName;
+	}
+	
+	/**
+	 * @return The maximum number of connected clients allowed on the server.
+	 */
+	public int getClientCap()
+	{
+		return clientCap;
+	}
+	
+	/**
+	 * @return The engine used to handle client connections.
+	 */
+	public ServerMode getMode()
+	{
+		return mode;
+	}
+	
+	/**
+	 * @param mode The engine used to handle client connections.
+	 */
+	public void setMode(ServerMode mode)
+	{
+		this.mode = mode;
+	}
+	
+	/**
+	 * @return The most messages the chat keeps in memory, 0 for no limit.
+	 */
+	public int getMaxMessages()
+	{
+		return maxMessages;
+	}
+	
+	/**
+	 * @param maxMessages The most messages the chat keeps in memory, 0 for no limit.
+	 */
+	public void setMaxMessages(int maxMessages)
+	{
+		this.maxMessages = maxMessages;
+	}
+	
+	/**
+	 * @return The most bytes of messages the chat keeps in memory, 0 for no limit.
+	 */
+	public long getMaxHistoryBytes()
+	{
+		return maxHistoryBytes;
+	}
+	
+	/**
+	 * @param maxHistoryBytes The most bytes of messages the chat keeps in memory, 0 for no limit.
+	 */
+	public void setMaxHistoryBytes(long maxHistoryBytes)
+	{
+		this.maxHistoryBytes = maxHistoryBytes;
+	}
+	
+	/**
+	 * @return The folder the chat is journaled to, null if the chat is not journaled.
+	 */
+	public String getJournalDir()
+	{
+		return journalDir;
+	}
+	
+	/**
+	 * @param journalDir The folder the chat is journaled to, null or empty to not journal the chat.
+	 */
+	public void setJournalDir(String journalDir)
+	{
+		this.journalDir = journalDir == null || journalDir.trim().isEmpty() ? null : journalDir.trim();
+	}
+	
+	/**
+	 * @return The size in bytes of each journal segment file.
+	 */
+	public int getJournalSegmentSize()
+	{
+		return journalSegmentSize;
+	}
+	
+	/**
+	 * @param journalSegmentSize The size in bytes of each journal segment file.
+	 */
+	public void setJournalSegmentSize(int journalSegmentSize)
+	{
+		this.journalSegmentSize = journalSegmentSize;
+	}
+	
+	/**
+	 * @return The most chatrooms (including the lobby) the server hosts.
+	 */
+	public int getMaxRooms()
+	{
+		return maxRooms;
+	}
+	
+	/**
+	 * @param maxRooms The most chatrooms (including the lobby) the server hosts.
+	 */
+	public void setMaxRooms(int maxRooms)
+	{
+		this.maxRooms = maxRooms;
+	}
+	
+	/**
+	 * @return The most clients which wait for a place when the server is full, 0 to turn clients away instead.
+	 */
+	public int getWaitingRoomSize()
+	{
+		return waitingRoomSize;
+	}
+	
+	/**
+	 * @param waitingRoomSize The most clients which wait for a place when the server is full, 0 to turn clients away instead. 
+	 * A waiting room needs the NIO engine, so the server uses it whatever the mode.
+	 */
+	public void setWaitingRoomSize(int waitingRoomSize)
+	{
+		this.waitingRoomSize = waitingRoomSize;
+	}
+	
+	/**
+	 * @return What to do with a client which falls further behind than its outbound queue allows.
+	 */
+	public BackpressurePolicy getBackpressure()
+	{
+		return backpressure;
+	}
+	
+	/**
+	 * @param backpressure What to do with a client which falls further behind than its outbound queue allows.
+	 */
+	public void setBackpressure(BackpressurePolicy backpressure)
+	{
+		this.backpressure = backpressure;
+	}
+	
+	/**
+	 * @return The most messages a client can be behind before the backpressure policy is applied.
+	 */
+	public int getOutboundQueueSize()
+	{
+		return outboundQueueSize;
+	}
+	
+	/**
+	 * @param outboundQueueSize The most messages a client can be behind before the backpressure policy is applied.
+	 */
+	public void setOutboundQueueSize(int outboundQueueSize)
+	{
+		this.outboundQueueSize = outboundQueueSize;
+	}
+	
+	/**
+	 * @return How long a client can be too far behind before it is disconnected, in milliseconds, under the BLOCK and DISCONNECT policies.
+	 */
+	public int getLagTimeout()
+	{
+		return lagTimeout;
+	}
+	
+	/**
+	 * @param lagTimeout How long a client can be too far behind before it is disconnected, in milliseconds, under the BLOCK and DISCONNECT policies.
+	 */
+	public void setLagTimeout(int lagTimeout)
+	{
+		this.lagTimeout = lagTimeout;
+	}
+	
+	/**
+	 * @return True if small writes to clients are sent straight away instead of being held back by Nagle's algorithm.
+	 */
+	public boolean isTcpNoDelay()
+	{
+		return tcpNoDelay;
+	}
+	
+	/**
+	 * @param tcpNoDelay True if small writes to clients are sent straight away instead of being held back by Nagle's algorithm.
+	 */
+	public void setTcpNoDelay(boolean tcpNoDelay)
+	{
+		this.tcpNoDelay = tcpNoDelay;
+	}
+	
+	/**
+	 * @return The size in bytes of each client socket's send buffer, 0 for the operating system's default.
+	 */
+	public int getSendBufferSize()
+	{
+		return sendBufferSize;
+	}
+	
+	/**
+	 * @param sendBufferSize The size in bytes of each client socket's send buffer, 0 for the operating system's default.
+	 */
+	public void setSendBufferSize(int sendBufferSize)
+	{
+		this.sendBufferSize = sendBufferSize;
+	}
+	
+	/**
+	 * @return The size in bytes of each client socket's receive buffer, 0 for the operating system's default.
+	 */
+	public int getReceiveBufferSize()
+	{
+		return receiveBufferSize;
+	}
+	
+	/**
+	 * @param receiveBufferSize The size in bytes of each client socket's receive buffer, 0 for the operating system's default.
+	 */
+	public void setReceiveBufferSize(int receiveBufferSize)
+	{
+		this.receiveBufferSize = receiveBufferSize;
+	}
+	
+	/**
+	 * @return How many of a room's most recent messages a client is sent when it joins, and in each page of older ones it asks for, 0 for all of them.
+	 */
+	public int getJoinHistory()
+	{
+		return joinHistory;
+	}
+	
+	/**
+	 * @param joinHistory How many of a room's most recent messages a client is sent when it joins, and in each page of older ones it asks for, 0 for all of them.
+	 */
+	public void setJoinHistory(int joinHistory)
+	{
+		this.joinHistory = joinHistory;
+	}
+	
+	/**
+	 * @return True if rooms keep their messages' bodies in direct memory rather than on the heap.
+	 */
+	public boolean isOffHeapHistory()
+	{
+		return offHeapHistory;
+	}
+	
+	/**
+	 * @param offHeapHistory True if rooms keep their messages' bodies in direct memory rather than on the heap.
+	 */
+	public void setOffHeapHistory(boolean offHeapHistory)
+	{
+		this.offHeapHistory = offHeapHistory;
+	}
+}
@@ -0,0 +1,68 @@
+package server;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Reports a server's status, load and errors as timestamped lines on the console, for servers run 
+ * without a display. Errors go to the error stream, everything else to the output stream.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class ServerConsole implements ServerView {
+	private PrintStream out;
+	private PrintStream err;
+	
+	/**
+	 * Constructor for the console, printing to the standard output and error streams.
+	 */
+	public ServerConsole()
+	{
+		this(System.out, System.err);
+	}
+	
+	/**
+	 * Constructor for the console.
+	 * @param out The stream for the server log.
+	 * @param err The stream for errors.
+	 */
+	public ServerConsole(PrintStream out, PrintStream err)
+	{
+		this.out = out;
+		this.err = err;
+	}
+	
+	@Override
+	public void statusChanged(boolean online)
+	{
+		log(online ? "Server Started" : "Server Stopped");
+	}
+	
+	@Override
+	public void updateLoad(int clientLoad)
+	{
+		log("Current Load: " + clientLoad + " Users");
+	}
+	
+	@Override
+	public void log(String msg)
+	{
+		out.println(timeStamp() + " " + msg);
+	}
+	
+	@Override
+	public void error(String error)
+	{
+		err.println(timeStamp() + " " + error);
+	}
+	
+	/**
+	 * Formats the current time the same way the ServerGUI's log does.
+	 * @return The time stamp.
+	 */
+	private static String timeStamp()
+	{
+		return new SimpleDateFormat("yyyy/MM/dd/HH:mm:ss").format(new Date());
+	}
+}
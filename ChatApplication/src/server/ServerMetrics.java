@@ -0,0 +1,437 @@
+package server;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of what the server is doing, cheap enough to always be on. 
+ * They are shown in the ServerGUI and registered as a JMX MBean.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+	/** Samples the rates of every server's metrics, on a single daemon thread. */
+	private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Metrics Sampler");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	private final Meter messages = new Meter();
+	private final Meter accepts = new Meter();
+	private final Meter bytesIn = new Meter();
+	private final Meter bytesOut = new Meter();
+	private final LongAdder rejects = new LongAdder();
+	private final LongAdder closedConnections = new LongAdder();
+	private final LongAdder closedBytesIn = new LongAdder();
+	private final LongAdder closedBytesOut = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder slowConsumers = new LongAdder();
+	private final MetricHistogram fanOut = new MetricHistogram();
+	private final MetricHistogram backlog = new MetricHistogram();
+	private final MetricHistogram queueDepth = new MetricHistogram();
+	private volatile SlotAllocator slots;
+	private volatile ServerView view;
+	private int shownLoad;
+	private volatile int waiting;
+	private final ScheduledFuture<?> sampling;
+	private ObjectName name;
+	
+	/**
+	 * A counter which also works out how fast it is going up.
+	 */
+	private static final class Meter
+	{
+		final LongAdder count = new LongAdder();
+		private long lastCount;
+		private long lastTime = System.nanoTime();
+		private volatile double rate;
+		
+		/**
+		 * Works out the rate the counter went up at since the last sample. Only called by the sampler.
+		 */
+		void sample()
+		{
+			long now = System.nanoTime();
+			long c = count.sum();
+			rate = (c - lastCount) * 1e9 / (now - lastTime);
+			lastCount = c;
+			lastTime = now;
+		}
+		
+		/**
+		 * Gets the rate worked out by the last sample.
+		 * @return The rate per second.
+		 */
+		double rate()
+		{
+			return rate;
+		}
+	}
+	
+	/**
+	 * Constructor for the metrics, starts sampling their rates once a second.
+	 */
+	public ServerMetrics()
+	{
+		sampling = SAMPLER.scheduleAtFixedRate(new Runnable()
+		{
+			@Override
+			public void run() {
+				messages.sample();
+				accepts.sample();
+				bytesIn.sample();
+				bytesOut.sample();
+				sampleLoad();
+			}
+		}, 1, 1, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Shows the number of clients connected in the view, if it changed since the last sample. 
+	 * Only called by the sampler.
+	 */
+	private void sampleLoad()
+	{
+		ServerView view = this.view;
+		int load = getConnections();
+		if(view == null || load == shownLoad)
+			return;
+		shownLoad = load;
+		view.updateLoad(load);
+	}
+	
+	/**
+	 * Counts the clients connected from the server's slots, and shows the count in the view once a second 
+	 * with the rates, rather than on every connect and disconnect.
+	 * @param slots The server's slots.
+	 * @param view Where the count is shown.
+	 */
+	public void watchLoad(SlotAllocator slots, ServerView view)
+	{
+		this.slots = slots;
+		this.view = view;
+	}
+	
+	/**
+	 * Registers the metrics with the platform MBean server, named after the server's port so several 
+	 * servers in one JVM can be told apart.
+	 * @param port The server's port.
+	 * @param view Where to report it if the metrics could not be registered.
+	 */
+	public void register(int port, ServerView view)
+	{
+		try
+		{
+			ObjectName name = new ObjectName("chat.server:type=Metrics,port=" + port);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			this.name = name;
+		}
+		catch(JMException e)
+		{
+			view.log("Could not register the JMX metrics: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Stops sampling the rates and unregisters the MBean, so another server can register on the same port.
+	 * Called once the server is closed for good.
+	 */
+	public void close()
+	{
+		sampling.cancel(false);
+		if(name == null)
+			return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+		catch(JMException e)
+		{
+			// Already unregistered
+		}
+		name = null;
+	}
+	
+	/**
+	 * Counts a message appended to a chatroom by a client.
+	 */
+	public void messageAppended()
+	{
+		messages.count.increment();
+	}
+	
+	/**
+	 * Counts a connection the server took.
+	 */
+	public void accepted()
+	{
+		accepts.count.increment();
+	}
+	
+	/**
+	 * Counts a connection turned away because the server was full.
+	 */
+	public void rejected()
+	{
+		rejects.increment();
+	}
+	
+	/**
+	 * Sets the number of clients in the waiting room.
+	 * @param count The number of clients.
+	 */
+	public void setWaiting(int count)
+	{
+		waiting = count;
+	}
+	
+	/**
+	 * Counts bytes read from a client.
+	 * @param n The number of bytes.
+	 */
+	public void bytesIn(long n)
+	{
+		bytesIn.count.add(n);
+	}
+	
+	/**
+	 * Counts bytes written to a client.
+	 * @param n The number of bytes.
+	 */
+	public void bytesOut(long n)
+	{
+		bytesOut.count.add(n);
+	}
+	
+	/**
+	 * Records how long it took from a message being added to it being written to one subscriber.
+	 * @param nanos The time in nanoseconds.
+	 */
+	public void fanOut(long nanos)
+	{
+		fanOut.record(nanos / 1000);
+	}
+	
+	/**
+	 * Records the number of messages an update has to send a client.
+	 * @param messages The number of messages the client has not recieved.
+	 */
+	public void catchUp(int messages)
+	{
+		backlog.record(messages);
+	}
+	
+	/**
+	 * Records the depth of a subscriber's outbound queue after a message was added for it.
+	 * @param messages The number of messages the subscriber has not recieved.
+	 */
+	public void queueDepth(int messages)
+	{
+		queueDepth.record(messages);
+	}
+	
+	/**
+	 * Counts messages skipped because a client was too far behind.
+	 * @param messages The number of messages.
+	 */
+	public void messagesDropped(int messages)
+	{
+		dropped.add(messages);
+	}
+	
+	/**
+	 * Counts a client disconnected because it was too far behind for too long.
+	 */
+	public void slowConsumerDisconnected()
+	{
+		slowConsumers.increment();
+	}
+	
+	/**
+	 * Records the totals of a connection which has closed.
+	 * @param in The bytes read from the client.
+	 * @param out The bytes written to the client.
+	 */
+	public void connectionClosed(long in, long out)
+	{
+		closedConnections.increment();
+		closedBytesIn.add(in);
+		closedBytesOut.add(out);
+	}
+	
+	@Override
+	public long getMessagesAppended()
+	{
+		return messages.count.sum();
+	}
+	
+	@Override
+	public double getMessagesPerSecond()
+	{
+		return messages.rate();
+	}
+	
+	@Override
+	public int getConnections()
+	{
+		SlotAllocator slots = this.slots;
+		return slots == null ? 0 : slots.getUsed();
+	}
+	
+	@Override
+	public int getWaiting()
+	{
+		return waiting;
+	}
+	
+	@Override
+	public long getConnectionsAccepted()
+	{
+		return accepts.count.sum();
+	}
+	
+	@Override
+	public double getAcceptsPerSecond()
+	{
+		return accepts.rate();
+	}
+	
+	@Override
+	public long getConnectionsRejected()
+	{
+		return rejects.sum();
+	}
+	
+	@Override
+	public long getBytesIn()
+	{
+		return bytesIn.count.sum();
+	}
+	
+	@Override
+	public long getBytesOut()
+	{
+		return bytesOut.count.sum();
+	}
+	
+	@Override
+	public double getBytesInPerSecond()
+	{
+		return bytesIn.rate();
+	}
+	
+	@Override
+	public double getBytesOutPerSecond()
+	{
+		return bytesOut.rate();
+	}
+	
+	/**
+	 * Gets the mean number of bytes read from each connection which has closed.
+	 * @return The mean, 0 if no connection has closed.
+	 */
+	@Override
+	public double getMeanBytesInPerConnection()
+	{
+		long n = closedConnections.sum();
+		return n == 0 ? 0 : (double) closedBytesIn.sum() / n;
+	}
+	
+	/**
+	 * Gets the mean number of bytes written to each connection which has closed.
+	 * @return The mean, 0 if no connection has closed.
+	 */
+	@Override
+	public double getMeanBytesOutPerConnection()
+	{
+		long n = closedConnections.sum();
+		return n == 0 ? 0 : (double) closedBytesOut.sum() / n;
+	}
+	
+	@Override
+	public long getFanOutLatencyP50Micros()
+	{
+		return fanOut.getPercentile(50);
+	}
+	
+	@Override
+	public long getFanOutLatencyP99Micros()
+	{
+		return fanOut.getPercentile(99);
+	}
+	
+	@Override
+	public long getFanOutLatencyMaxMicros()
+	{
+		return fanOut.getMax();
+	}
+	
+	@Override
+	public long getCatchUpBacklogP50()
+	{
+		return backlog.getPercentile(50);
+	}
+	
+	@Override
+	public long getCatchUpBacklogP99()
+	{
+		return backlog.getPercentile(99);
+	}
+	
+	@Override
+	public long getCatchUpBacklogMax()
+	{
+		return backlog.getMax();
+	}
+	
+	@Override
+	public long getOutboundQueueDepthP50()
+	{
+		return queueDepth.getPercentile(50);
+	}
+	
+	@Override
+	public long getOutboundQueueDepthP99()
+	{
+		return queueDepth.getPercentile(99);
+	}
+	
+	@Override
+	public long getOutboundQueueDepthMax()
+	{
+		return queueDepth.getMax();
+	}
+	
+	@Override
+	public long getMessagesDropped()
+	{
+		return dropped.sum();
+	}
+	
+	@Override
+	public long getSlowConsumersDisconnected()
+	{
+		return slowConsumers.sum();
+	}
+	
+	@Override
+	public void resetHistograms()
+	{
+		fanOut.reset();
+		backlog.reset();
+		queueDepth.reset();
+	}
+}
@@ -0,0 +1,46 @@
+package server;
+
+/**
+ * The server's metrics as seen over JMX, for example in JConsole or VisualVM under "chat.server". 
+ * Rates are per second, over the last second (they are sampled once a second, whoever reads them). Latencies 
+ * are in microseconds, and percentiles cover everything since the server started or resetHistograms().
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public interface ServerMetricsMBean {
+	long getMessagesAppended();
+	double getMessagesPerSecond();
+	
+	int getConnections();
+	int getWaiting();
+	long getConnectionsAccepted();
+	double getAcceptsPerSecond();
+	long getConnectionsRejected();
+	
+	long getBytesIn();
+	long getBytesOut();
+	double getBytesInPerSecond();
+	double getBytesOutPerSecond();
+	double getMeanBytesInPerConnection();
+	double getMeanBytesOutPerConnection();
+	
+	long getFanOutLatencyP50Micros();
+	long getFanOutLatencyP99Micros();
+	long getFanOutLatencyMaxMicros();
+	
+	long getCatchUpBacklogP50();
+	long getCatchUpBacklogP99();
+	long getCatchUpBacklogMax();
+	
+	long getOutboundQueueDepthP50();
+	long getOutboundQueueDepthP99();
+	long getOutboundQueueDepthMax();
+	long getMessagesDropped();
+	long getSlowConsumersDisconnected();
+	
+	/**
+	 * Starts the latency, backlog and queue depth histograms over, so their percentiles only cover what happens next.
+	 */
+	void resetHistograms();
+}
@@ -0,0 +1,33 @@
+package server;
+
+/**
+ * The engines the server can use to handle client connections.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public enum ServerMode {
+	/** One blocking ServerThread per connected client. */
+	THREADED("Thread per Client"),
+	/** One blocking ServerThread per connected client, run on a virtual thread (Java 21+). */
+	VIRTUAL("Virtual Threads"),
+	/** A small fixed set of non-blocking selector loops shared by all clients. */
+	NIO("NIO Selector");
+	
+	private String label;
+	
+	private ServerMode(String label)
+	{
+		this.label = label;
+	}
+	
+	/**
+	 * The name displayed for this mode in the GUI.
+	 * @return A String.
+	 */
+	@Override
+	public String toString()
+	{
+		return label;
+	}
+}
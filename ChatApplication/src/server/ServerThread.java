@@ -1,113 +1,488 @@
-package server;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
-
-import chat_constants.Constants;
-
-/**
- * Opens the sockets I/O streams to a client, and communicates with them.
- * The clients messages are added to the chatroom when recieved and if the message counter called "MsgID"
- * is less than the number of messages in the chatroom, it sends the appropriate number of messages back.
- * The newest message will be a null character.
- * @author Bailey Duncan
- * @since May 18, 2017
- * @version 1.0
- */
-public class ServerThread extends Thread{
-	private Server server;
-	private Socket client;
-	private BufferedReader in;
-	private PrintWriter out;
-	private String read;
-	private Chatroom chat;
-	private int MsgID = -1;
-	private int threadID;
-	
-	/**
-	 * Constructor for the ServerThread, opens the sockets I/O streams.
-	 * @param s The socket connected to the client.
-	 * @param chatroom The arraylist containing the chat messages.
-	 * @param server The back-end server class.
-	 * @param ID This threads ID number (index number in the server's array of ServerThreads)
-	 */
-	public ServerThread(Socket s, Chatroom chatroom, Server server, int ID)
-	{
-		try
-		{
-			client = s;
-			in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-			out = new PrintWriter(client.getOutputStream(), true);
-			this.chat = chatroom;
-			this.server = server;
-			this.threadID = ID;
-		}
-		catch(IOException e)
-		{
-			Constants.errorPopup("IOException Occurred!" + e.getMessage());
-		}
-	}
-	
-	/**
-	 * Closes the socket (and its I/O streams) and decrements the client count.
-	 * @throws Exception
-	 */
-	public void close() throws Exception
-	{
-		client.close();
-		server.endConnection(threadID);
-	}
-	
-	/**
-	 * Concatenates all the messages the client has not recieved from the chatroom 
-	 * separated by newline characters and null terminated.
-	 * @return All the chat messages to send to the client.
-	 */
-	public String updateClient()
-	{
-		String msgToAdd = "";
-		while(MsgID != chat.getSize() - 1)
-		{
-			MsgID++;
-			msgToAdd += chat.getMsg(MsgID) + "\n";
-		}
-		return msgToAdd + "\0";
-	}
-	
-	/**
-	 * Communicates with the client, reading and appending the messages to the chatroom when
-	 * necessary.
-	 */
-	public void run()
-	{
-		try
-		{
-			while(client.isConnected())
-			{
-				read = in.readLine();
-				if(read.equals("0"))
-					out.println(updateClient());
-				else if(read.equals("QUIT"))
-				{
-					close();
-					break;
-				}
-				else 
-				{
-					chat.addMsg(read);
-					out.println(updateClient());
-				}
-			}
-		}
-		catch(IOException e)
-		{
-			Constants.errorPopup("IOException Occurred in serverThread Run!" + e.getMessage());
-		}
-		catch(Exception e)
-		{
-			Constants.errorPopup("Exception Occurred in serverThread Run! " + e.getMessage());
-		}
-	}
-}
+package server;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import chat_constants.BinaryProtocol;
+import chat_constants.FrameReader;
+import chat_constants.Protocol;
+
+/**
+ * Opens the sockets I/O streams to a client, and communicates with them using the text or binary protocol.
+ * The clients messages are added to its chatroom when recieved, and the messages it has not recieved are sent back 
+ * when it polls, or pushed as soon as they are added once it has subscribed.
+ * @author Bailey Duncan
+ * @since May 18, 2017
+ * @version 1.0
+ */
+public class ServerThread implements Runnable, ChatroomListener, ClientConnection{
+	private Server server;
+	private Socket client;
+	private BufferedInputStream in;
+	private OutputStream out;
+	private volatile Chatroom chat;
+	private CatchUpEncoder encoder;
+	private OutboundQueue queue;
+	private ServerMetrics metrics;
+	private int threadID, version;
+	private long bytesIn, bytesOut;
+	private boolean push, closed;
+	private volatile boolean stopping, evicted;
+	private volatile long pushStart;
+	private final AtomicBoolean updateScheduled = new AtomicBoolean();
+	private final ReentrantLock writeLock = new ReentrantLock();
+	
+	/**
+	 * Constructor for the ServerThread, opens the sockets I/O streams.
+	 * @param s The socket connected to the client.
+	 * @param chatroom The chatroom the client starts in (the server's lobby).
+	 * @param server The back-end server class.
+	 * @param ID This threads ID number (index number in the server's array of ServerThreads)
+	 */
+	public ServerThread(Socket s, Chatroom chatroom, Server server, int ID)
+	{
+		try
+		{
+			client = s;
+			this.chat = chatroom;
+			this.server = server;
+			this.threadID = ID;
+			metrics = server.getMetrics();
+			queue = server.newOutboundQueue();
+			in = new BufferedInputStream(new FilterInputStream(client.getInputStream())
+			{
+				@Override
+				public int read(byte b[], int off, int len) throws IOException
+				{
+					int n = super.read(b, off, len);
+					if(n > 0)
+					{
+						bytesIn += n;
+						metrics.bytesIn(n);
+					}
+					return n;
+				}
+			});
+			out = client.getOutputStream();
+			encoder = new CatchUpEncoder();
+		}
+		catch(IOException e)
+		{
+			server.error("IOException Occurred!" + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Closes the socket (and its I/O streams) and decrements the client count. Does nothing if it 
+	 * has already been closed.
+	 * @throws Exception
+	 */
+	public void close() throws Exception
+	{
+		if(closed)
+			return;
+		closed = true;
+		chat.unsubscribe(this);
+		queue.close();
+		if(stopping)
+			sendShutdown();
+		client.close();
+		// Taken after the socket is closed, so a write blocked on a client which stopped reading has failed
+		writeLock.lock();
+		try
+		{
+			metrics.connectionClosed(bytesIn, bytesOut);
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+		server.endConnection(threadID);
+	}
+	
+	/**
+	 * Tells the client the server has been stopped. The connection is closed by this client's own thread, 
+	 * which is woken up by shutting down the socket's input.
+	 */
+	@Override
+	public void shutdown()
+	{
+		if(stopping)
+			return;
+		stopping = true;
+		try
+		{
+			client.shutdownInput();
+		}
+		catch(IOException e)
+		{
+			forceClose();
+		}
+	}
+	
+	/**
+	 * Closes the socket, which wakes this client's thread up if it is blocked reading or writing, 
+	 * so that it can give back its slot.
+	 */
+	@Override
+	public void forceClose()
+	{
+		try
+		{
+			client.close();
+		}
+		catch(IOException e) {}
+	}
+	
+	/**
+	 * Writes the notice that the server has been stopped, if the client is still there to read it.
+	 */
+	private void sendShutdown()
+	{
+		writeLock.lock();
+		try
+		{
+			encoder.encodeShutdown();
+			wrote(encoder.writeTo(out));
+		}
+		catch(IOException e)
+		{
+			// The client is already gone
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Sends every message the client has not recieved yet, separated by newline characters and null terminated. 
+	 * The messages are encoded straight into the connection's reusable buffer and written in bounded batches. 
+	 * Writes can come from this thread or from a push on the server's executor, so the encoder and output 
+	 * stream are guarded by a lock. The write blocks while holding it, so it is a ReentrantLock to keep 
+	 * virtual threads from pinning.
+	 * @throws IOException If the client can not be written to.
+	 */
+	public void sendUpdate() throws IOException
+	{
+		writeLock.lock();
+		try
+		{
+			writeUpdate();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Writes the encoded replies and every message the client has not recieved, recording the size of the 
+	 * catch-up and the bytes sent. The outbound queue is trimmed before each batch, so a client which 
+	 * falls behind while a long catch-up is being written still skips messages. Must be called holding the write lock.
+	 * @throws IOException If the client can not be written to.
+	 */
+	private void writeUpdate() throws IOException
+	{
+		queue.trim(chat, encoder);
+		metrics.catchUp(OutboundQueue.depth(chat, encoder));
+		boolean done;
+		do
+		{
+			done = encoder.encode(chat);
+			wrote(encoder.writeTo(out));
+			queue.drained();
+			if(!done)
+				queue.trim(chat, encoder);
+		}
+		while(!done);
+	}
+	
+	/**
+	 * Counts bytes written to the client.
+	 * @param n The number of bytes.
+	 */
+	private void wrote(long n)
+	{
+		bytesOut += n;
+		metrics.bytesOut(n);
+	}
+	
+	/**
+	 * Moves the client to another chatroom and sends them its messages, preceded by a line 
+	 * telling the client which room it is now in.
+	 * @param room The room to join, or null if it could not be joined.
+	 * @throws IOException If the client can not be written to.
+	 */
+	public void joinRoom(Chatroom room) throws IOException
+	{
+		writeLock.lock();
+		try
+		{
+			if(room == null)
+				encoder.encodeNotice(Protocol.ROOMERROR);
+			else
+			{
+				chat.unsubscribe(this);
+				chat = room;
+				encoder.reset(room);
+				encoder.encodeRoomChanged(room.getName());
+				if(push)
+					chat.subscribe(this);
+			}
+			writeUpdate();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Sends the client a line listing every room on the server, followed by any new messages.
+	 * @throws IOException If the client can not be written to.
+	 */
+	public void listRooms() throws IOException
+	{
+		sendNotice(server.getRooms().describe());
+	}
+	
+	/**
+	 * Sends the client a notice from the server, followed by any new messages.
+	 * @param notice The notice.
+	 * @throws IOException If the client can not be written to.
+	 */
+	private void sendNotice(String notice) throws IOException
+	{
+		writeLock.lock();
+		try
+		{
+			encoder.encodeNotice(notice);
+			writeUpdate();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Sends the client a page of the messages before one it already has, followed by any new messages.
+	 * @param before The ID of the oldest message the client has, or null if the request did not have one.
+	 * @throws IOException If the client can not be written to.
+	 */
+	public void sendHistory(String before) throws IOException
+	{
+		int id;
+		try
+		{
+			id = Integer.parseInt(before.trim());
+		}
+		catch(NumberFormatException | NullPointerException e)
+		{
+			// Not a message ID, there is nothing to page back from
+			return;
+		}
+		writeLock.lock();
+		try
+		{
+			encoder.startPage(chat, id);
+			writeUpdate();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Pushes new messages to the client as soon as they are added to the chatroom it is in, recording 
+	 * how long it took as the fan-out latency. The push is scheduled on the server's executor, so the 
+	 * thread which added the message never writes to another client's socket. Several messages added 
+	 * before the push runs are sent together as one batch. Under the BLOCK policy the adding thread then 
+	 * waits for the client to catch up if it is too far behind. A client which has been too far behind for 
+	 * too long is disconnected.
+	 * @param chatroom The chatroom the message was added to.
+	 */
+	@Override
+	public void messageAdded(Chatroom chatroom)
+	{
+		if(chatroom != chat)
+			return;
+		if(!queue.offer(OutboundQueue.depth(chatroom, encoder)))
+		{
+			evict();
+			return;
+		}
+		if(updateScheduled.compareAndSet(false, true))
+		{
+			pushStart = System.nanoTime();
+			server.execute(new Runnable()
+			{
+				@Override
+				public void run() {
+					push();
+				}
+			});
+		}
+		if(!queue.awaitCapacity(chatroom, encoder))
+			evict();
+	}
+	
+	/**
+	 * Writes the messages added since the push was scheduled, on one of the server's executor threads.
+	 */
+	private void push()
+	{
+		long start = pushStart;
+		updateScheduled.set(false);
+		if(closed || stopping)
+			return;
+		try
+		{
+			sendUpdate();
+			metrics.fanOut(System.nanoTime() - start);
+		}
+		catch(IOException e)
+		{
+			// The client is gone, its own thread will notice and close the connection
+		}
+	}
+	
+	/**
+	 * Disconnects a client which has been too far behind for too long. Closing the socket wakes up 
+	 * a push blocked writing to it, and this client's thread, which gives back its slot.
+	 */
+	private void evict()
+	{
+		evicted = true;
+		server.log("Disconnected client " + threadID + " for falling too far behind");
+		forceClose();
+	}
+	
+	/**
+	 * Handles a request from the client.
+	 * @param opcode The request's opcode.
+	 * @param text The request's text, the message for a chat message or the name for a join.
+	 * @return False if the connection has been closed.
+	 * @throws Exception If the reply can not be written or the connection can not be closed.
+	 */
+	private boolean handle(int opcode, String text) throws Exception
+	{
+		if(stopping)
+		{
+			// Anything the client sent after the server stopped is ignored
+			close();
+			return false;
+		}
+		switch(opcode)
+		{
+		case BinaryProtocol.POLL:
+			sendUpdate();
+			break;
+		case BinaryProtocol.SUBSCRIBE:
+			push = true;
+			chat.subscribe(this);
+			break;
+		case BinaryProtocol.MESSAGE:
+			if(!Chatroom.isValidMessage(text))
+			{
+				sendNotice(Protocol.MESSAGEERROR);
+				break;
+			}
+			chat.addMsg(text);
+			metrics.messageAppended();
+			if(!push)
+				sendUpdate();
+			break;
+		case BinaryProtocol.JOIN:
+			joinRoom(server.getRooms().getRoom(text));
+			break;
+		case BinaryProtocol.LEAVE:
+			joinRoom(server.getRooms().getLobby());
+			break;
+		case BinaryProtocol.LIST_ROOMS:
+			listRooms();
+			break;
+		case BinaryProtocol.HISTORY:
+			sendHistory(text);
+			break;
+		case BinaryProtocol.QUIT:
+		default:
+			// The end of the stream or an opcode this version does not know also closes the connection
+			close();
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Communicates with the client, reading and appending the messages to the chatroom when
+	 * necessary.
+	 */
+	public void run()
+	{
+		try
+		{
+			version = BinaryProtocol.readHello(in);
+			if(version > 0)
+			{
+				encoder.encodeHello(version);
+				wrote(encoder.writeTo(out));
+			}
+			encoder.setHistory(server.getJoinHistory());
+			encoder.setPaging(version >= BinaryProtocol.HISTORY_VERSION);
+			encoder.reset(chat);
+			if(version > 0)
+			{
+				encoder.setBinary(true);
+				encoder.setCompressed(version >= BinaryProtocol.COMPRESSION_VERSION);
+				FrameReader frames = new FrameReader(in, BinaryProtocol.MAX_PAYLOAD);
+				int opcode;
+				do
+				{
+					opcode = frames.readFrame();
+				}
+				while(handle(opcode, opcode == BinaryProtocol.MESSAGE || opcode == BinaryProtocol.JOIN || opcode == BinaryProtocol.HISTORY ? frames.getText() : null));
+			}
+			else
+			{
+				BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+				String read;
+				byte opcode;
+				do
+				{
+					read = lines.readLine();
+					opcode = read == null ? BinaryProtocol.QUIT : BinaryProtocol.textOpcode(read);
+				}
+				while(handle(opcode, read == null ? null : BinaryProtocol.textPayload(opcode, read)));
+			}
+		}
+		catch(IOException e)
+		{
+			if(!stopping && !evicted)
+				server.error("IOException Occurred in serverThread Run!" + e.getMessage());
+		}
+		catch(Exception e)
+		{
+			if(!stopping && !evicted)
+				server.error("Exception Occurred in serverThread Run! " + e.getMessage());
+		}
+		finally
+		{
+			// A client which broke the connection or the protocol still gives its slot back
+			try
+			{
+				close();
+			}
+			catch(Exception e) {}
+		}
+	}
+}
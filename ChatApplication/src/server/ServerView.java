@@ -0,0 +1,35 @@
+package server;
+
+/**
+ * Where a server reports its status, its load and anything that goes wrong. The ServerGUI shows them in 
+ * its window, the ServerConsole prints them for a server running without a display.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public interface ServerView {
+	/**
+	 * Shows that the server has been started or stopped.
+	 * @param online True if the server is now online.
+	 */
+	void statusChanged(boolean online);
+	
+	/**
+	 * Shows the number of clients connected to the server. Called on the metrics sampler's thread, 
+	 * at most once a second and only when the number has changed.
+	 * @param clientLoad The number of clients connected to the server.
+	 */
+	void updateLoad(int clientLoad);
+	
+	/**
+	 * Adds a line to the server log.
+	 * @param msg The text to add.
+	 */
+	void log(String msg);
+	
+	/**
+	 * Reports an error to the host.
+	 * @param error The error message.
+	 */
+	void error(String error);
+}
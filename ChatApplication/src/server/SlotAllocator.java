@@ -0,0 +1,81 @@
+package server;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the thread IDs (array indexes) of a server's clients. The free IDs are kept in a lock-free 
+ * stack linked through an int array, so taking and giving back an ID is a single compare and set however 
+ * large the server's capacity is. The top of the stack is stored with a counter which every change 
+ * increments, so a thread can never mistake a top which was taken and given back for one which was 
+ * never changed (the ABA problem). Recently freed IDs are reused first, while their entries are still cached.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class SlotAllocator {
+	private static final long INDEX_MASK = 0xFFFFFFFFL;
+	
+	private final int next[];
+	private final AtomicLong head;
+	private final AtomicInteger used;
+	
+	/**
+	 * Constructor for the allocator, every ID starts free.
+	 * @param capacity The number of IDs, 0 to capacity - 1.
+	 */
+	public SlotAllocator(int capacity)
+	{
+		next = new int[capacity];
+		for(int i = 0; i < capacity; i++)
+			next[i] = i + 1 < capacity ? i + 1 : -1;
+		head = new AtomicLong(capacity > 0 ? 0 : INDEX_MASK);
+		used = new AtomicInteger();
+	}
+	
+	/**
+	 * Takes a free ID.
+	 * @return The ID, or -1 if every ID is in use.
+	 */
+	public int acquire()
+	{
+		while(true)
+		{
+			long h = head.get();
+			int top = (int) h;
+			if(top == -1)
+				return -1;
+			// Read before the compare and set, if another thread took the top in between the set fails
+			long newHead = (h + (1L << 32)) & ~INDEX_MASK | next[top] & INDEX_MASK;
+			if(head.compareAndSet(h, newHead))
+			{
+				used.incrementAndGet();
+				return top;
+			}
+		}
+	}
+	
+	/**
+	 * Gives back an ID so it can be taken again.
+	 * @param slot An ID taken with acquire() and not given back yet.
+	 */
+	public void release(int slot)
+	{
+		used.decrementAndGet();
+		while(true)
+		{
+			long h = head.get();
+			next[slot] = (int) h;
+			if(head.compareAndSet(h, (h + (1L << 32)) & ~INDEX_MASK | slot & INDEX_MASK))
+				return;
+		}
+	}
+	
+	/**
+	 * Gets the number of IDs in use.
+	 * @return The count.
+	 */
+	public int getUsed()
+	{
+		return used.get();
+	}
+}
@@ -0,0 +1,316 @@
+package server;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import chat_constants.BinaryProtocol;
+import chat_constants.FrameReader;
+
+/**
+ * Tests for the CatchUpEncoder, decoding what it encodes with each protocol the way the client does.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class CatchUpEncoderTest {
+	private static final String SENDER = "alice: ";
+	
+	/**
+	 * A stream which keeps every batch written to it separately.
+	 */
+	private static class BatchStream extends OutputStream
+	{
+		final ByteArrayOutputStream all = new ByteArrayOutputStream();
+		final List<Integer> batches = new ArrayList<Integer>();
+		
+		@Override
+		public void write(int b)
+		{
+			all.write(b);
+			batches.add(1);
+		}
+		
+		@Override
+		public void write(byte b[], int off, int len)
+		{
+			all.write(b, off, len);
+			batches.add(len);
+		}
+	}
+	
+	/**
+	 * Makes a message from alice which is exactly a given number of bytes once encoded as UTF-8,
+	 * with a character from outside the Basic Multilingual Plane every so often.
+	 * @param bytes The message's length in bytes.
+	 * @return The message.
+	 */
+	private static String messageOf(int bytes)
+	{
+		StringBuilder msg = new StringBuilder(SENDER);
+		int length = SENDER.length();
+		while(length < bytes)
+		{
+			if(bytes - length >= 4 && msg.length() % 64 == 0)
+			{
+				msg.append("\uD83D\uDE00");
+				length += 4;
+			}
+			else
+			{
+				msg.append('x');
+				length++;
+			}
+		}
+		return msg.toString();
+	}
+	
+	/**
+	 * Fills a chatroom with small messages and messages around the largest payload, so that they fall
+	 * across the edges of batches, along with text outside the Basic Multilingual Plane and lone surrogates.
+	 * @return The messages, in the order they were added.
+	 */
+	private static List<String> fill(Chatroom chat)
+	{
+		List<String> msgs = new ArrayList<String>();
+		int sizes[] = {
+				BinaryProtocol.MAX_PAYLOAD, BinaryProtocol.MAX_PAYLOAD - 1,
+				BinaryProtocol.MAX_PAYLOAD - BinaryProtocol.HEADER_SIZE, BinaryProtocol.MAX_PAYLOAD - BinaryProtocol.HEADER_SIZE - 1,
+				CatchUpEncoder.COMPRESSED_BATCH_SIZE, CatchUpEncoder.COMPRESSED_BATCH_SIZE - BinaryProtocol.HEADER_SIZE,
+				CatchUpEncoder.BATCH_SIZE, CatchUpEncoder.BATCH_SIZE - BinaryProtocol.HEADER_SIZE, CatchUpEncoder.COMPRESS_THRESHOLD};
+		for(int i = 0; i < 400; i++)
+		{
+			if(i % 7 == 0)
+				msgs.add("bob: tea \uD83C\uDF75 at " + i + " \uD801\uDC37");
+			else if(i % 11 == 0)
+				msgs.add("carol: lone \uD800 high and \uDC00 low " + i + " \uDBFF");
+			else if(i % 13 == 0)
+				msgs.add(messageOf(sizes[(i / 13) % sizes.length]));
+			else
+				msgs.add("dave: message " + i);
+		}
+		for(String msg : msgs)
+			chat.addMsg(msg);
+		return msgs;
+	}
+	
+	/**
+	 * Gets text as a client would read it back, with each lone surrogate turned into '?'.
+	 */
+	private static String sent(String text)
+	{
+		return new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Creates an encoder for a client using a protocol.
+	 * @param protocol "text", "binary" or "compressed".
+	 */
+	private static CatchUpEncoder encoder(String protocol)
+	{
+		CatchUpEncoder encoder = new CatchUpEncoder();
+		encoder.setBinary(!protocol.equals("text"));
+		encoder.setCompressed(protocol.equals("compressed"));
+		return encoder;
+	}
+	
+	/**
+	 * Splits text protocol output into its lines.
+	 */
+	private static List<String> lines(byte bytes[])
+	{
+		List<String> lines = new ArrayList<String>();
+		int start = 0;
+		for(int i = 0; i < bytes.length; i++)
+			if(bytes[i] == '\n')
+			{
+				lines.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+				start = i + 1;
+			}
+		assertEquals("The output should end with a newline", bytes.length, start);
+		return lines;
+	}
+	
+	/**
+	 * Reads binary protocol output back as "opcode text" for each frame, inflating COMPRESSED frames.
+	 */
+	private static List<String> frames(byte bytes[]) throws IOException
+	{
+		List<String> frames = new ArrayList<String>();
+		FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes), BinaryProtocol.MAX_PAYLOAD);
+		reader.setCompression(true);
+		int opcode;
+		while((opcode = reader.readFrame()) != -1)
+			frames.add(opcode + " " + reader.getText());
+		return frames;
+	}
+	
+	/**
+	 * Counts the COMPRESSED frames at the top level of binary protocol output.
+	 */
+	private static int compressedFrames(byte bytes[])
+	{
+		int count = 0;
+		for(int p = 0; p < bytes.length; )
+		{
+			if(bytes[p] == BinaryProtocol.COMPRESSED)
+				count++;
+			p += BinaryProtocol.HEADER_SIZE + ((bytes[p + 1] & 0xFF) << 24 | (bytes[p + 2] & 0xFF) << 16
+					| (bytes[p + 3] & 0xFF) << 8 | (bytes[p + 4] & 0xFF));
+		}
+		return count;
+	}
+	
+	/**
+	 * Catches a client up on every message and checks no batch was larger than it should be. Only a batch
+	 * holding a single message too large for the batch size may be, and then only by that message.
+	 */
+	private static byte[] catchUp(Chatroom chat, CatchUpEncoder encoder, int batchSize) throws IOException
+	{
+		BatchStream out = new BatchStream();
+		encoder.writeUpdate(chat, out);
+		for(int batch : out.batches)
+			assertTrue("Batch of " + batch + " bytes", batch <= Math.max(batchSize, BinaryProtocol.MAX_PAYLOAD + BinaryProtocol.HEADER_SIZE));
+		return out.all.toByteArray();
+	}
+	
+	@Test
+	public void textLinesDecodeToEveryMessage() throws IOException
+	{
+		Chatroom chat = new Chatroom("test", 0, 0);
+		List<String> msgs = fill(chat);
+		CatchUpEncoder encoder = encoder("text");
+		encoder.reset(chat);
+		List<String> lines = lines(catchUp(chat, encoder, CatchUpEncoder.BATCH_SIZE));
+		
+		assertEquals(msgs.size() + 1, lines.size());
+		for(int i = 0; i < msgs.size(); i++)
+			assertEquals("Message " + i, sent(msgs.get(i)), lines.get(i));
+		assertEquals("\0", lines.get(msgs.size()));
+	}
+	
+	@Test
+	public void binaryFramesDecodeToEveryMessage() throws IOException
+	{
+		decodeFrames("binary", CatchUpEncoder.BATCH_SIZE);
+	}
+	
+	@Test
+	public void compressedFramesDecodeToEveryMessage() throws IOException
+	{
+		decodeFrames("compressed", CatchUpEncoder.COMPRESSED_BATCH_SIZE);
+	}
+	
+	/**
+	 * Checks a binary protocol catch-up decodes to every message, then the END frame.
+	 */
+	private static void decodeFrames(String protocol, int batchSize) throws IOException
+	{
+		Chatroom chat = new Chatroom("test", 0, 0);
+		List<String> msgs = fill(chat);
+		CatchUpEncoder encoder = encoder(protocol);
+		encoder.reset(chat);
+		byte bytes[] = catchUp(chat, encoder, batchSize);
+		List<String> frames = frames(bytes);
+		
+		assertEquals(msgs.size() + 1, frames.size());
+		for(int i = 0; i < msgs.size(); i++)
+			assertEquals("Message " + i, BinaryProtocol.MESSAGE + " " + sent(msgs.get(i)), frames.get(i));
+		assertEquals(BinaryProtocol.END + " ", frames.get(msgs.size()));
+		assertEquals(protocol.equals("compressed"), compressedFrames(bytes) > 0);
+	}
+	
+	@Test
+	public void noticesEncodeSurrogatesLikeMessages() throws IOException
+	{
+		String notice = "caf\u00E9 \u20AC \uD83D\uDE00 lone \uD800 and \uDC00 end \uD83D";
+		for(String protocol : new String[] {"text", "binary"})
+		{
+			CatchUpEncoder encoder = encoder(protocol);
+			encoder.encodeNotice(notice);
+			encoder.encodeRoomChanged("r\u00F6\u00F6m \uD83D\uDE00");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			encoder.writeTo(out);
+			List<String> decoded = protocol.equals("text") ? lines(out.toByteArray()) : frames(out.toByteArray());
+			String prefix = protocol.equals("text") ? "" : BinaryProtocol.NOTICE + " ";
+			assertEquals(prefix + sent(notice), decoded.get(0));
+			assertTrue(decoded.get(1), decoded.get(1).endsWith("r\u00F6\u00F6m \uD83D\uDE00"));
+		}
+		assertTrue(sent(notice).endsWith("lone ? and ? end ?"));
+	}
+	
+	@Test
+	public void pagesOlderMessagesOnRequest() throws IOException
+	{
+		Chatroom chat = new Chatroom("test", 0, 0);
+		for(int i = 0; i < 50; i++)
+			chat.addMsg("alice: " + i);
+		CatchUpEncoder encoder = encoder("binary");
+		encoder.setHistory(10);
+		encoder.setPaging(true);
+		encoder.reset(chat);
+		List<String> frames = frames(catchUp(chat, encoder, CatchUpEncoder.BATCH_SIZE));
+		assertEquals(BinaryProtocol.OLDER + " 40", frames.get(0));
+		assertEquals(BinaryProtocol.MESSAGE + " alice: 40", frames.get(1));
+		assertEquals(BinaryProtocol.END + " ", frames.get(11));
+		assertEquals(12, frames.size());
+		
+		encoder.startPage(chat, 40);
+		frames = frames(catchUp(chat, encoder, CatchUpEncoder.BATCH_SIZE));
+		assertEquals(BinaryProtocol.PAGE + " 30", frames.get(0));
+		for(int i = 0; i < 10; i++)
+			assertEquals(BinaryProtocol.MESSAGE + " alice: " + (30 + i), frames.get(1 + i));
+		// The page's END, then the END of the messages which are new since the last catch-up (none)
+		assertEquals(BinaryProtocol.END + " ", frames.get(11));
+		assertEquals(BinaryProtocol.END + " ", frames.get(12));
+		assertEquals(13, frames.size());
+	}
+	
+	@Test
+	public void catchUpDoesNotAllocatePerMessage() throws IOException
+	{
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+		
+		int messages = 20000;
+		Chatroom chat = new Chatroom("test", 0, 0);
+		for(int i = 0; i < messages; i++)
+			chat.addMsg("user" + (i % 50) + ": message number " + i + " with some text in it");
+		OutputStream discard = new OutputStream()
+		{
+			@Override
+			public void write(int b) {}
+			
+			@Override
+			public void write(byte b[], int off, int len) {}
+		};
+		long id = Thread.currentThread().getId();
+		for(String protocol : new String[] {"text", "binary", "compressed"})
+		{
+			CatchUpEncoder encoder = encoder(protocol);
+			// The first catch-ups grow the buffer and share out the deflaters
+			for(int i = 0; i < 3; i++)
+			{
+				encoder.reset(chat);
+				encoder.writeUpdate(chat, discard);
+			}
+			long before = threads.getThreadAllocatedBytes(id);
+			encoder.reset(chat);
+			encoder.writeUpdate(chat, discard);
+			long allocated = threads.getThreadAllocatedBytes(id) - before;
+			// A batch may allocate a little (a compressed one hands its deflater back to a shared queue), a message never does
+			assertTrue(protocol + " catch-up of " + messages + " messages allocated " + allocated + " bytes", allocated < messages);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package server;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for recovering a ChatJournal, including from segment files corrupted by hand.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class ChatJournalTest {
+	private static final int SEGMENT_SIZE = 1024;
+	private static final int MESSAGES = 100;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File dir;
+	private Chatroom written;
+	
+	@Before
+	public void writeJournal() throws IOException
+	{
+		dir = folder.newFolder("journal");
+		written = open();
+		for(int i = 0; i < MESSAGES; i++)
+			written.addMsg("user" + (i % 3) + ": message " + i);
+		assertTrue("The journal should span several segments", segments().length >= 3);
+	}
+	
+	/**
+	 * Restores a new chatroom from the journal folder and journals it from then on, as the server does on startup.
+	 * @return The restored chatroom.
+	 */
+	private Chatroom open() throws IOException
+	{
+		Chatroom chat = new Chatroom("test", 0, 0);
+		ChatJournal journal = new ChatJournal(dir, SEGMENT_SIZE, new ServerConsole());
+		journal.recover(chat);
+		chat.subscribe(journal);
+		return chat;
+	}
+	
+	/**
+	 * Lists the segment files, oldest first.
+	 */
+	private File[] segments()
+	{
+		File files[] = dir.listFiles();
+		Arrays.sort(files);
+		return files;
+	}
+	
+	/**
+	 * Walks a segment's records.
+	 * @param f The segment file.
+	 * @return The offset of each record.
+	 */
+	private static int[] records(File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			int offsets[] = new int[0];
+			long pos = ChatJournal.FILE_HEADER_SIZE;
+			while(pos + ChatJournal.HEADER_SIZE <= raf.length())
+			{
+				raf.seek(pos + 4);
+				// Only the unused end of a segment has no checksum
+				if(raf.readInt() == 0)
+					break;
+				raf.seek(pos);
+				int length = raf.readInt();
+				raf.seek(pos + 20);
+				int senderLength = raf.readInt();
+				offsets = Arrays.copyOf(offsets, offsets.length + 1);
+				offsets[offsets.length - 1] = (int) pos;
+				pos += ChatJournal.HEADER_SIZE + senderLength + length;
+			}
+			return offsets;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Reads the record count a segment was sealed with.
+	 */
+	private static int sealedCount(File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			raf.seek(4);
+			return raf.readInt();
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Overwrites bytes of a segment file.
+	 * @param f The segment file.
+	 * @param pos Where to start.
+	 * @param length The number of bytes.
+	 * @param flip True to invert each byte, false to zero it.
+	 */
+	private static void damage(File f, long pos, int length, boolean flip) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		try
+		{
+			for(int i = 0; i < length; i++)
+			{
+				raf.seek(pos + i);
+				int b = raf.read();
+				raf.seek(pos + i);
+				raf.write(flip ? ~b : 0);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Gets the offset of the last byte of a record's body.
+	 */
+	private static long lastBodyByte(File f, int record) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			raf.seek(record + 20);
+			int senderLength = raf.readInt();
+			raf.seek(record);
+			return record + ChatJournal.HEADER_SIZE + senderLength + raf.readInt() - 1;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Counts the messages in every segment before the given one, which are all sealed.
+	 */
+	private int countBefore(int segment) throws IOException
+	{
+		int count = 0;
+		for(int i = 0; i < segment; i++)
+			count += sealedCount(segments()[i]);
+		return count;
+	}
+	
+	@Test
+	public void recoversEveryMessageWithItsSenderAndTime() throws IOException
+	{
+		Chatroom chat = open();
+		assertEquals(MESSAGES, chat.getSize());
+		for(int i = 0; i < MESSAGES; i++)
+		{
+			assertEquals(written.getMsg(i), chat.getMsg(i));
+			assertArrayEquals(written.getSender(i), chat.getSender(i));
+			assertEquals(written.getTime(i), chat.getTime(i));
+		}
+	}
+	
+	@Test
+	public void tornTailIsDiscardedAndWrittenOver() throws IOException
+	{
+		File segs[] = segments();
+		File last = segs[segs.length - 1];
+		int records[] = records(last);
+		int torn = records[records.length - 1];
+		long end = lastBodyByte(last, torn);
+		// The record's header made it to disk but the end of its body did not
+		damage(last, end - 3, 4, false);
+		
+		Chatroom chat = open();
+		assertEquals(MESSAGES - 1, chat.getSize());
+		assertEquals(written.getMsg(MESSAGES - 2), chat.getMsg(MESSAGES - 2));
+		chat.addMsg("user0: after the crash");
+		
+		chat = open();
+		assertEquals(MESSAGES, chat.getSize());
+		assertEquals("user0: after the crash", chat.getMsg(MESSAGES - 1));
+	}
+	
+	@Test
+	public void badChecksumStopsTheScan() throws IOException
+	{
+		File segs[] = segments();
+		File last = segs[segs.length - 1];
+		int records[] = records(last);
+		assertTrue(records.length > 2);
+		damage(last, lastBodyByte(last, records[1]), 1, true);
+		
+		Chatroom chat = open();
+		assertEquals(countBefore(segs.length - 1) + 1, chat.getSize());
+		assertEquals(written.getMsg(chat.getSize() - 1), chat.getMsg(chat.getSize() - 1));
+	}
+	
+	@Test
+	public void missingSegmentDiscardsEverythingAfterIt() throws IOException
+	{
+		File segs[] = segments();
+		int kept = sealedCount(segs[0]);
+		assertTrue(segs[1].delete());
+		
+		Chatroom chat = open();
+		assertEquals(kept, chat.getSize());
+		assertEquals(written.getMsg(kept - 1), chat.getMsg(kept - 1));
+		assertEquals(1, segments().length);
+		for(int i = 2; i < segs.length; i++)
+			assertFalse(segs[i].exists());
+	}
+	
+	@Test
+	public void sealedSegmentIsTrustedByItsCount() throws IOException
+	{
+		File first = segments()[0];
+		int records[] = records(first);
+		damage(first, lastBodyByte(first, records[2]), 1, true);
+		
+		// The sealed segment is not scanned, so the damaged record is still recovered
+		Chatroom chat = open();
+		assertEquals(MESSAGES, chat.getSize());
+		assertFalse(written.getMsg(2).equals(chat.getMsg(2)));
+		assertEquals(written.getMsg(3), chat.getMsg(3));
+	}
+	
+	@Test
+	public void brokenSealIsScannedInstead() throws IOException
+	{
+		File segs[] = segments();
+		File first = segs[0];
+		// A seal which does not match its checksum is ignored, and every record still checks out
+		damage(first, 8, 1, true);
+		assertEquals(MESSAGES, open().getSize());
+		
+		int records[] = records(first);
+		damage(first, lastBodyByte(first, records[2]), 1, true);
+		Chatroom chat = open();
+		assertEquals(2, chat.getSize());
+		assertEquals(written.getMsg(1), chat.getMsg(1));
+		assertEquals(1, segments().length);
+	}
+}
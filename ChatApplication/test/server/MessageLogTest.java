@@ -0,0 +1,262 @@
+package server;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Test;
+
+/**
+ * Tests for the MessageLog, mostly hammering it from many threads at once.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class MessageLogTest {
+	private static final int WRITERS = 8;
+	private static final int READERS = 4;
+	private static final int PER_WRITER = 20000;
+	
+	/**
+	 * Starts a thread for each task at once, waits for them all and rethrows the first failure.
+	 * @param writers The tasks which must all finish.
+	 * @param readers Tasks which run until the writers are done.
+	 * @param done Set once the writers have finished, to stop the readers.
+	 */
+	private static void run(Runnable writers[], Runnable readers[], AtomicBoolean done) throws Throwable
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread threads[] = new Thread[writers.length + readers.length];
+		for(int i = 0; i < threads.length; i++)
+		{
+			final Runnable task = i < writers.length ? writers[i] : readers[i - writers.length];
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+						task.run();
+					}
+					catch(Throwable t)
+					{
+						failure.compareAndSet(null, t);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for(int i = 0; i < writers.length; i++)
+			threads[i].join();
+		done.set(true);
+		for(int i = writers.length; i < threads.length; i++)
+			threads[i].join();
+		if(failure.get() != null)
+			throw failure.get();
+	}
+	
+	@Test
+	public void splitsSenderFromBody()
+	{
+		MessageLog log = new MessageLog();
+		log.append("alice: hello: there");
+		log.append("no sender here");
+		assertEquals("alice", new String(log.sender(0), StandardCharsets.UTF_8));
+		assertEquals("hello: there".length(), log.bodyLength(0));
+		assertEquals("alice: hello: there", log.get(0));
+		assertNull(log.sender(1));
+		assertEquals("no sender here", log.get(1));
+		assertTrue(log.time(1) > 0);
+	}
+	
+	@Test
+	public void evictsOldestOverMessageLimit()
+	{
+		MessageLog log = new MessageLog(10, 0);
+		for(int i = 0; i < 2500; i++)
+			log.append("user: " + i);
+		assertEquals(2500, log.size());
+		assertEquals(2490, log.first());
+		assertNull(log.get(0));
+		assertEquals(-1, log.bodyLength(2489));
+		assertEquals("user: 2499", log.get(2499));
+	}
+	
+	@Test
+	public void concurrentAppendsGetEverySequenceNumberOnce() throws Throwable
+	{
+		final MessageLog log = new MessageLog();
+		final AtomicReferenceArray<String> appended = new AtomicReferenceArray<String>(WRITERS * PER_WRITER);
+		Runnable writers[] = new Runnable[WRITERS];
+		for(int w = 0; w < WRITERS; w++)
+		{
+			final int writer = w;
+			writers[w] = new Runnable() {
+				@Override
+				public void run()
+				{
+					for(int i = 0; i < PER_WRITER; i++)
+					{
+						String msg = "writer" + writer + ": " + i;
+						int seq = log.append(msg);
+						assertTrue("Sequence number " + seq + " given out twice", appended.compareAndSet(seq, null, msg));
+					}
+				}
+			};
+		}
+		run(writers, new Runnable[0], new AtomicBoolean());
+		
+		assertEquals(WRITERS * PER_WRITER, log.size());
+		for(int seq = 0; seq < appended.length(); seq++)
+		{
+			assertNotNull("Sequence number " + seq + " was never given out", appended.get(seq));
+			assertEquals(appended.get(seq), log.get(seq));
+		}
+	}
+	
+	@Test
+	public void readersNeverSeeUnpublishedMessages() throws Throwable
+	{
+		readWhileAppending(false);
+	}
+	
+	@Test
+	public void readersNeverSeeUnpublishedOffHeapMessages() throws Throwable
+	{
+		readWhileAppending(true);
+	}
+	
+	/**
+	 * Reads every message as soon as it is below size(), while writers are still appending.
+	 * Nothing is evicted, so every one of them has to be there in full.
+	 */
+	private static void readWhileAppending(boolean offHeap) throws Throwable
+	{
+		final MessageLog log = new MessageLog(0, 0, offHeap);
+		final AtomicBoolean done = new AtomicBoolean();
+		Runnable writers[] = new Runnable[WRITERS];
+		for(int w = 0; w < WRITERS; w++)
+		{
+			final int writer = w;
+			writers[w] = new Runnable() {
+				@Override
+				public void run()
+				{
+					for(int i = 0; i < PER_WRITER; i++)
+						log.append("writer" + writer + ": message " + i);
+				}
+			};
+		}
+		Runnable readers[] = new Runnable[READERS];
+		for(int r = 0; r < READERS; r++)
+		{
+			readers[r] = new Runnable() {
+				@Override
+				public void run()
+				{
+					int read = 0;
+					while(!done.get() || read < log.size())
+					{
+						int size = log.size();
+						for(; read < size; read++)
+						{
+							int length = log.bodyLength(read);
+							assertTrue("Message " + read + " is below size() but has no body", length != -1);
+							assertNotNull("Message " + read + " has no sender", log.sender(read));
+							assertTrue("Message " + read + " has no time", log.time(read) > 0);
+							String msg = log.get(read);
+							assertNotNull(msg);
+							assertTrue(msg, msg.startsWith("writer") && msg.contains(": message "));
+						}
+					}
+				}
+			};
+		}
+		run(writers, readers, done);
+		assertEquals(WRITERS * PER_WRITER, log.size());
+	}
+	
+	@Test
+	public void readsRacingEvictionNeverThrow() throws Throwable
+	{
+		readWhileEvicting(false);
+	}
+	
+	@Test
+	public void readsRacingOffHeapEvictionNeverThrow() throws Throwable
+	{
+		readWhileEvicting(true);
+	}
+	
+	/**
+	 * Reads messages around the head of a small log while writers keep evicting them and dropping their segments.
+	 * A read must either find the whole message or report it evicted, never throw or copy part of it.
+	 */
+	private static void readWhileEvicting(boolean offHeap) throws Throwable
+	{
+		final MessageLog log = new MessageLog(64, 0, offHeap);
+		final AtomicBoolean done = new AtomicBoolean();
+		Runnable writers[] = new Runnable[WRITERS];
+		for(int w = 0; w < WRITERS; w++)
+		{
+			final int writer = w;
+			writers[w] = new Runnable() {
+				@Override
+				public void run()
+				{
+					for(int i = 0; i < PER_WRITER; i++)
+						log.append("writer" + writer + ": message " + i);
+				}
+			};
+		}
+		Runnable readers[] = new Runnable[READERS];
+		for(int r = 0; r < READERS; r++)
+		{
+			readers[r] = new Runnable() {
+				@Override
+				public void run()
+				{
+					ByteBuffer dst = ByteBuffer.allocate(64);
+					while(!done.get())
+					{
+						int size = log.size();
+						for(int seq = Math.max(0, log.first() - 8); seq < size; seq++)
+						{
+							int length = log.bodyLength(seq);
+							if(length == -1)
+							{
+								dst.clear();
+								assertFalse("Evicted message " + seq + " was copied", log.copyBody(seq, dst));
+								assertEquals(0, dst.position());
+								continue;
+							}
+							dst.clear();
+							if(log.copyBody(seq, dst))
+							{
+								assertEquals(length, dst.position());
+								String body = new String(dst.array(), 0, length, StandardCharsets.UTF_8);
+								assertTrue(body, body.startsWith("message "));
+							}
+							String msg = log.get(seq);
+							assertTrue(msg, msg == null || msg.startsWith("writer"));
+						}
+					}
+				}
+			};
+		}
+		run(writers, readers, done);
+		assertEquals(WRITERS * PER_WRITER, log.size());
+		assertEquals(WRITERS * PER_WRITER - 64, log.first());
+	}
+}
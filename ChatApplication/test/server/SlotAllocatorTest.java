@@ -0,0 +1,104 @@
+package server;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for the SlotAllocator, taking and giving back IDs from many threads at once.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+public class SlotAllocatorTest {
+	private static final int CAPACITY = 16;
+	private static final int THREADS = 8;
+	private static final int ROUNDS = 200000;
+	
+	/**
+	 * Takes every ID, checking none is handed out twice and that the allocator then reports it is full.
+	 * @param slots The allocator, with every ID free.
+	 */
+	private static void takeAll(SlotAllocator slots)
+	{
+		HashSet<Integer> taken = new HashSet<Integer>();
+		for(int i = 0; i < CAPACITY; i++)
+		{
+			int slot = slots.acquire();
+			assertTrue("Bad ID " + slot, slot >= 0 && slot < CAPACITY);
+			assertTrue("ID " + slot + " handed out twice", taken.add(slot));
+		}
+		assertEquals(-1, slots.acquire());
+		assertEquals(CAPACITY, slots.getUsed());
+	}
+	
+	@Test
+	public void handsOutEveryIdOnce()
+	{
+		SlotAllocator slots = new SlotAllocator(CAPACITY);
+		takeAll(slots);
+		slots.release(3);
+		assertEquals(3, slots.acquire());
+	}
+	
+	@Test
+	public void concurrentAcquireAndReleaseNeverShareAnId() throws Throwable
+	{
+		final SlotAllocator slots = new SlotAllocator(CAPACITY);
+		final AtomicIntegerArray owners = new AtomicIntegerArray(CAPACITY);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread threads[] = new Thread[THREADS];
+		for(int t = 0; t < THREADS; t++)
+		{
+			final int owner = t + 1;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+						int held[] = new int[3];
+						for(int i = 0; i < ROUNDS; i++)
+						{
+							// Hold a few IDs at a time, so the stack is popped and pushed in every order
+							int count = 0;
+							for(; count < held.length; count++)
+							{
+								held[count] = slots.acquire();
+								if(held[count] == -1)
+									break;
+								assertTrue("ID " + held[count] + " handed out twice", owners.compareAndSet(held[count], 0, owner));
+							}
+							while(count > 0)
+							{
+								int slot = held[--count];
+								assertTrue(owners.compareAndSet(slot, owner, 0));
+								slots.release(slot);
+							}
+						}
+					}
+					catch(Throwable e)
+					{
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for(Thread t : threads)
+			t.join();
+		if(failure.get() != null)
+			throw failure.get();
+		
+		assertEquals(0, slots.getUsed());
+		takeAll(slots);
+	}
+}
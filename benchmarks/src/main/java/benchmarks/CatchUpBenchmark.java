@@ -0,0 +1,93 @@
+package benchmarks;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.CatchUpEncoder;
+import server.Chatroom;
+
+/**
+ * Measures catching a client up on a backlog of messages, the work ServerThread.sendUpdate() does 
+ * for a polling client or one that just joined a room, in both protocols and with the binary protocol's 
+ * compressed catch-up, from history kept on the heap or in off-heap arenas. The bytes are counted 
+ * instead of being written to a socket so only the encoding is measured. Run it with -prof gc to see 
+ * the bytes allocated per catch-up, which should not grow with the backlog.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatchUpBenchmark {
+	/** The number of messages the client has not recieved. */
+	@Param({"10", "1000", "100000"})
+	public int backlog;
+	
+	/** The protocol the client is using, "compressed" being the binary protocol with compressed catch-ups. */
+	@Param({"text", "binary", "compressed"})
+	public String protocol;
+	
+	/** Where the chat keeps its messages' bodies, "heap" or "offHeap". */
+	@Param({"heap", "offHeap"})
+	public String storage;
+	
+	private Chatroom chat;
+	private CatchUpEncoder encoder;
+	private CountingStream out;
+	
+	/**
+	 * An output stream which only counts the bytes written to it.
+	 */
+	static class CountingStream extends OutputStream
+	{
+		long count;
+		
+		@Override
+		public void write(int b)
+		{
+			count++;
+		}
+		
+		@Override
+		public void write(byte b[], int off, int len)
+		{
+			count += len;
+		}
+	}
+	
+	@Setup
+	public void setup()
+	{
+		chat = new Chatroom("", 0, 0, storage.equals("offHeap"));
+		for(int i = 0; i < backlog; i++)
+			chat.addMsg("user" + (i % 50) + ": message number " + i + " with some text in it");
+		encoder = new CatchUpEncoder();
+		encoder.setBinary(!protocol.equals("text"));
+		encoder.setCompressed(protocol.equals("compressed"));
+		out = new CountingStream();
+	}
+	
+	@Benchmark
+	public long catchUp() throws IOException
+	{
+		encoder.reset(chat);
+		encoder.writeUpdate(chat, out);
+		return out.count;
+	}
+}
@@ -0,0 +1,91 @@
+package benchmarks;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.Chatroom;
+
+/**
+ * Measures Chatroom.addMsg() and getMsg() under contention: several threads adding at once, and 
+ * threads reading recent messages while others add. Run with and without a retention limit, since 
+ * evicting old messages is part of adding once the limit is reached.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatroomBenchmark {
+	private static final String MSG = "someone: a chat message of a typical length";
+	private static final int RECENT = 1000;
+	
+	/** The most messages the chatroom keeps, 0 for no limit. */
+	@Param({"0", "10000"})
+	public int maxMessages;
+	
+	private Chatroom chat;
+	
+	/**
+	 * A reader's position among the recent messages.
+	 */
+	@State(Scope.Thread)
+	public static class Reader
+	{
+		int next;
+	}
+	
+	/**
+	 * Starts every iteration with a fresh chatroom holding some messages, so unbounded runs do not 
+	 * carry the previous iteration's messages.
+	 */
+	@Setup(Level.Iteration)
+	public void setup()
+	{
+		chat = new Chatroom(maxMessages, 0);
+		for(int i = 0; i < RECENT; i++)
+			chat.addMsg(MSG);
+	}
+	
+	@Benchmark
+	@Group("add")
+	@GroupThreads(4)
+	public int addContended()
+	{
+		return chat.addMsg(MSG);
+	}
+	
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public int mixedAdd()
+	{
+		return chat.addMsg(MSG);
+	}
+	
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public String mixedGet(Reader r)
+	{
+		int newest = chat.getSize() - 1;
+		r.next = r.next == RECENT - 1 ? 0 : r.next + 1;
+		return chat.getMsg(newest - r.next);
+	}
+}
@@ -0,0 +1,108 @@
+package benchmarks;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chat_constants.BinaryProtocol;
+import chat_constants.FrameReader;
+import server.CatchUpEncoder;
+import server.Chatroom;
+
+/**
+ * Measures the client side parsing of an update from the server, as done in Client.run(). The text 
+ * protocol is read line by line, once checking for the terminator with a regex the way the client 
+ * originally did and once with equals(), and the binary protocol is read frame by frame.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+	/** The number of messages in the update. */
+	@Param({"100", "10000"})
+	public int messages;
+	
+	private byte text[];
+	private byte binary[];
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		Chatroom chat = new Chatroom();
+		for(int i = 0; i < messages; i++)
+			chat.addMsg("user" + (i % 50) + ": message number " + i + " with some text in it");
+		text = encode(chat, false);
+		binary = encode(chat, true);
+	}
+	
+	/**
+	 * Encodes a whole update the way the server sends it.
+	 * @param chat The chatroom to send.
+	 * @param binary True for the binary protocol.
+	 * @return The encoded update.
+	 * @throws IOException Never, the stream is in memory.
+	 */
+	private static byte[] encode(Chatroom chat, boolean binary) throws IOException
+	{
+		CatchUpEncoder encoder = new CatchUpEncoder();
+		encoder.setBinary(binary);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encoder.writeUpdate(chat, out);
+		return out.toByteArray();
+	}
+	
+	@Benchmark
+	public int textLinesRegex() throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(text), StandardCharsets.UTF_8));
+		int chars = 0;
+		String read;
+		while(!(read = in.readLine()).matches("\0"))
+			chars += read.length();
+		return chars;
+	}
+	
+	@Benchmark
+	public int textLines() throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(text), StandardCharsets.UTF_8));
+		int chars = 0;
+		String read;
+		while(!(read = in.readLine()).equals("\0"))
+			chars += read.length();
+		return chars;
+	}
+	
+	@Benchmark
+	public int binaryFrames() throws IOException
+	{
+		FrameReader in = new FrameReader(new ByteArrayInputStream(binary), Integer.MAX_VALUE);
+		int chars = 0;
+		int opcode;
+		while((opcode = in.readFrame()) != BinaryProtocol.END)
+			if(opcode == BinaryProtocol.MESSAGE)
+				chars += in.getText().length();
+		return chars;
+	}
+}
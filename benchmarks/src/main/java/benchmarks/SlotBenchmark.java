@@ -0,0 +1,59 @@
+package benchmarks;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.SlotAllocator;
+
+/**
+ * Measures connection churn on a server's thread IDs: taking an ID and giving it back, from several 
+ * threads at once, with most of the IDs already in use so a linear scan would have far to look.
+ * @author Bailey Duncan
+ * @since October 18, 2026
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlotBenchmark {
+	/** The server's capacity. */
+	@Param({"100", "50000"})
+	public int capacity;
+	
+	private SlotAllocator slots;
+	
+	/**
+	 * Fills all but a few IDs, as on a busy server.
+	 */
+	@Setup
+	public void setup()
+	{
+		slots = new SlotAllocator(capacity);
+		for(int i = 0; i < capacity - 16; i++)
+			slots.acquire();
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public int churn()
+	{
+		int slot = slots.acquire();
+		if(slot != -1)
+			slots.release(slot);
+		return slot;
+	}
+}